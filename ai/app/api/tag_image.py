@@ -4,7 +4,7 @@ from PIL import Image
 from fastapi import APIRouter
 
 from config.settings import settings
-from schema.tag_image import TagImageResponse, TagImageRequest, TagData
+from schema.tag_image import TagImageResponse, TagImageRequest, TagData, TagImagesRequest, TagImagesResponse
 
 router = APIRouter()
 _semaphore = asyncio.Semaphore(1)  # 限制并发访问
@@ -25,15 +25,51 @@ async def tag_image(request: TagImageRequest) -> TagImageResponse:
                 threshold=request.threshold,
             )
 
-        # 组织返回数据
-        data: TagData = {c: [] for c in result.keys()}
-        for cat, cat_tags in result.items():
-            for pair in cat_tags:
-                data[cat].append(pair["tag"])
-
-        return TagImageResponse.ok(data)
+        return TagImageResponse.ok(_to_tag_data(result))
 
     except Exception as e:
         import traceback
         traceback.print_exc()
         return TagImageResponse.fail(str(e))
+
+
+@router.post("/tag_images", response_model=TagImagesResponse)
+async def tag_images(request: TagImagesRequest) -> TagImagesResponse:
+    """
+    批量打标：所有能打开的图片合并为一次推理，单张图片失败不影响其他图片
+    """
+    tagger = settings.tagger
+
+    try:
+        results: list[TagImageResponse | None] = [None] * len(request.image_paths)
+        images, positions = [], []
+        for i, image_path in enumerate(request.image_paths):
+            try:
+                image = Image.open(settings.data_dir / image_path)
+                image.load()
+                images.append(image)
+                positions.append(i)
+            except Exception as e:
+                results[i] = TagImageResponse.fail(str(e))
+
+        if images:
+            async with _semaphore:
+                batch = tagger.tag_batch(images=images, threshold=request.threshold)
+            for i, result in zip(positions, batch):
+                results[i] = TagImageResponse.ok(_to_tag_data(result))
+
+        return TagImagesResponse.ok(results)
+
+    except Exception as e:
+        import traceback
+        traceback.print_exc()
+        return TagImagesResponse.fail(str(e))
+
+
+def _to_tag_data(result) -> TagData:
+    """组织返回数据，只保留标签名"""
+    data: TagData = {c: [] for c in result.keys()}
+    for cat, cat_tags in result.items():
+        for pair in cat_tags:
+            data[cat].append(pair["tag"])
+    return data
@@ -28,3 +28,29 @@ class TagImageResponse(BaseModel):
             success=False,
             error=error
         )
+
+
+class TagImagesRequest(BaseModel):
+    image_paths: List[str] = Field(..., min_length=1)
+    threshold: float = Field(0.61, ge=0.0, le=1.0)
+
+
+class TagImagesResponse(BaseModel):
+    success: bool
+    # 与 image_paths 顺序一致的单张结果
+    data: List[TagImageResponse] = None
+    error: Optional[str] = None
+
+    @classmethod
+    def ok(cls, data: List[TagImageResponse]) -> "TagImagesResponse":
+        return cls(
+            success=True,
+            data=data
+        )
+
+    @classmethod
+    def fail(cls, error: str) -> "TagImagesResponse":
+        return cls(
+            success=False,
+            error=error
+        )
@@ -150,26 +150,51 @@ class CamieTagger:
         :param top_k: 每个类别保留的前 K 个标签。
         :return: 包含分类标签及其置信度的字典。
         """
-        print("开始推理...")
+        return self.tag_batch([image], threshold, top_k)[0]
+
+    def tag_batch(self, images: List[Image.Image], threshold: float = 0.61, top_k: int = 50) -> List[Dict[str, List[Dict]]]:
+        """
+        批量打标：多张图片拼成一个批次张量，只执行一次推理。
+        模型输入的批次维度固定时逐张推理。
+        :param images: PIL Image 对象列表。
+        :param threshold: 置信度阈值 (0-1)。
+        :param top_k: 每个类别保留的前 K 个标签。
+        :return: 与输入顺序一致的打标结果列表。
+        """
+        print(f"开始推理，批次大小: {len(images)}...")
 
         # 加载图片
-        if not isinstance(image, Image.Image):
-            raise TypeError("参数 'image' 必须是 PIL.Image.Image 类型。请在传入前使用 Image.open() 加载图片。")
+        for image in images:
+            if not isinstance(image, Image.Image):
+                raise TypeError("参数 'image' 必须是 PIL.Image.Image 类型。请在传入前使用 Image.open() 加载图片。")
 
         # 1. 预处理
-        input_data = self._preprocess_image(image)
+        input_data = np.concatenate([self._preprocess_image(image) for image in images])
 
         # 2. 推理
         start = time.time()
-        outputs = self.session.run(None, {self.session.get_inputs()[0].name: input_data})
+        input_meta = self.session.get_inputs()[0]
+        if isinstance(input_meta.shape[0], int) and input_meta.shape[0] != len(images):
+            batches = [input_data[i:i + 1] for i in range(len(images))]
+        else:
+            batches = [input_data]
+        logits = []
+        for batch in batches:
+            outputs = self.session.run(None, {input_meta.name: batch})
+            # v2 模型通常有两个输出：[0] 是初始预测，[1] 是优化后的预测
+            logits.append(outputs[1] if len(outputs) >= 2 else outputs[0])
+        logits = np.concatenate(logits)
         latency = time.time() - start
 
         # 3. 后处理逻辑
-        # v2 模型通常有两个输出：[0] 是初始预测，[1] 是优化后的预测
-        logits = outputs[1] if len(outputs) >= 2 else outputs[0]
-        probs = 1.0 / (1.0 + np.exp(-logits[0]))  # Sigmoid 激活
+        probs = 1.0 / (1.0 + np.exp(-logits))  # Sigmoid 激活
+        results = [self._postprocess(p, threshold, top_k) for p in probs]
+
+        print(f"推理完成，耗时: {latency:.4f}s, 批次大小: {len(images)}")
+        return results
 
-        # 筛选与归类
+    def _postprocess(self, probs: np.ndarray, threshold: float, top_k: int) -> Dict[str, List[Dict]]:
+        """按阈值筛选单张图片的标签并按类别归纳"""
         tags_by_cat = defaultdict(list)
         indices = np.where(probs >= threshold)[0]
 
@@ -188,5 +213,4 @@ class CamieTagger:
         for cat in tags_by_cat:
             tags_by_cat[cat] = sorted(tags_by_cat[cat], key=lambda x: x['confidence'], reverse=True)[:top_k]
 
-        print(f"推理完成，耗时: {latency:.4f}s, 检测到标签总数: {len(indices)}")
         return dict(tags_by_cat)
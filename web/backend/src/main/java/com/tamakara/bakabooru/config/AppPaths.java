@@ -15,6 +15,7 @@ public class AppPaths {
     private final Path imageDir;
     private final Path tempDir;
     private final Path thumbnailDir;
+    private final Path thumbnailPackDir;
     private final Path pendingDir;
     private final Path dbDir;
 
@@ -25,6 +26,7 @@ public class AppPaths {
         this.imageDir = root.resolve("image");
         this.tempDir = root.resolve("temp");
         this.thumbnailDir = tempDir.resolve("thumbnail");
+        this.thumbnailPackDir = tempDir.resolve("thumbpack");
         this.pendingDir = tempDir.resolve("pending");
         this.dbDir = root.resolve("db");
     }
@@ -3,22 +3,46 @@ package com.tamakara.bakabooru.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
 
 @Configuration
 @EnableAsync
+@EnableScheduling
 public class AsyncConfig {
 
-    @Bean("uploadExecutor")
-    public Executor uploadExecutor() {
+    /**
+     * 缩略图解码线程池。线程数受 CPU 核数与堆内存预算共同限制（每个解码任务按 64MB 估算，
+     * 最多占用四分之一的堆），队列有界，队列满时拒绝任务而不是继续堆积。
+     */
+    @Bean("thumbnailExecutor")
+    public ThreadPoolTaskExecutor thumbnailExecutor() {
+        long decodeBudget = 64L * 1024 * 1024;
+        int byMemory = (int) Math.max(1, Runtime.getRuntime().maxMemory() / 4 / decodeBudget);
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), byMemory));
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads * 16);
+        executor.setThreadNamePrefix("thumbnail-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 后台维护任务（缩略图补全等）线程池，单线程依次执行，避免与前台请求争抢资源。
+     */
+    @Bean("maintenanceExecutor")
+    public Executor maintenanceExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(4);
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(100);
-        executor.setThreadNamePrefix("upload-");
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(10);
+        executor.setThreadNamePrefix("maintenance-");
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+}
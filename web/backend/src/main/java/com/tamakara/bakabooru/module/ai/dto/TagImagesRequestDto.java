@@ -0,0 +1,17 @@
+package com.tamakara.bakabooru.module.ai.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class TagImagesRequestDto {
+    @JsonProperty("image_paths")
+    private List<String> imagePaths;
+
+    @JsonProperty("threshold")
+    private Double threshold;
+}
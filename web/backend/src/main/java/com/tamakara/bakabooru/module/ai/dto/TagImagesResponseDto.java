@@ -0,0 +1,13 @@
+package com.tamakara.bakabooru.module.ai.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class TagImagesResponseDto {
+    private boolean success;
+    // 与请求中 image_paths 顺序一致的单张结果
+    private List<TagImageResponseDto> data;
+    private String error;
+}
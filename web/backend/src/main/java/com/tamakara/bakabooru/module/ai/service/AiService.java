@@ -3,6 +3,8 @@ package com.tamakara.bakabooru.module.ai.service;
 import com.tamakara.bakabooru.module.ai.dto.QueryParseRequestDto;
 import com.tamakara.bakabooru.module.ai.dto.TagImageRequestDto;
 import com.tamakara.bakabooru.module.ai.dto.TagImageResponseDto;
+import com.tamakara.bakabooru.module.ai.dto.TagImagesRequestDto;
+import com.tamakara.bakabooru.module.ai.dto.TagImagesResponseDto;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
@@ -32,6 +34,18 @@ public class AiService {
                 .block(); // 同步等结果
     }
 
+    public TagImagesResponseDto tagImages(TagImagesRequestDto requestBody) {
+
+        return webClient
+                .post()
+                .uri("/tag_images")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(TagImagesResponseDto.class)
+                .block(); // 同步等结果
+    }
+
     public String queryParse(QueryParseRequestDto requestBody) {
 
         return webClient
@@ -0,0 +1,195 @@
+package com.tamakara.bakabooru.module.ai.service;
+
+import com.tamakara.bakabooru.module.ai.dto.TagImageRequestDto;
+import com.tamakara.bakabooru.module.ai.dto.TagImageResponseDto;
+import com.tamakara.bakabooru.module.ai.dto.TagImagesRequestDto;
+import com.tamakara.bakabooru.module.ai.dto.TagImagesResponseDto;
+import com.tamakara.bakabooru.module.system.service.SystemSettingService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AI 打标微批处理：收集等待中的打标请求，凑满 tag.batch-size 张或最早的请求等待超过
+ * tag.batch-wait-ms 毫秒后合并为一次 /tag_images 调用，再把结果分发给各个请求。
+ * 同时只有一个批次在途，在途期间到达的请求自然组成下一个批次。
+ * AI 服务没有批量接口时退回逐张调用 /tag_image。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AiTagBatchService {
+
+    private static final int DEFAULT_BATCH_SIZE = 8;
+    private static final long DEFAULT_BATCH_WAIT_MILLIS = 20;
+
+    private final AiService aiService;
+    private final SystemSettingService systemSettingService;
+    private final MeterRegistry meterRegistry;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private Thread dispatcher;
+
+    // 旧版 AI 服务没有批量接口
+    private volatile boolean batchSupported = true;
+
+    private DistributionSummary batchSizeSummary;
+    private Timer batchTimer;
+    private Timer requestTimer;
+
+    @PostConstruct
+    public void start() {
+        batchSizeSummary = DistributionSummary.builder("ai.tag.batch.size").register(meterRegistry);
+        batchTimer = Timer.builder("ai.tag.batch.duration").register(meterRegistry);
+        requestTimer = Timer.builder("ai.tag.request.duration").register(meterRegistry);
+        Gauge.builder("ai.tag.queue", queue, BlockingQueue::size).register(meterRegistry);
+
+        dispatcher = new Thread(this::run, "ai-tag-batcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.future.completeExceptionally(new IllegalStateException("服务正在关闭"));
+        }
+    }
+
+    public int getBatchSize() {
+        return Math.max(1, systemSettingService.getIntSetting("tag.batch-size", DEFAULT_BATCH_SIZE));
+    }
+
+    /**
+     * 提交打标请求，结果在所在批次返回后完成。
+     */
+    public CompletableFuture<Map<String, List<String>>> submit(String imagePath, double threshold) {
+        Request request = new Request(imagePath, threshold);
+        queue.add(request);
+        return request.future;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Request> batch = new ArrayList<>();
+            try {
+                Request first = queue.take();
+                batch.add(first);
+                int batchSize = getBatchSize();
+                long waitNanos = TimeUnit.MILLISECONDS.toNanos(
+                        systemSettingService.getLongSetting("tag.batch-wait-ms", DEFAULT_BATCH_WAIT_MILLIS));
+                long deadline = first.enqueuedAt + waitNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                batch.forEach(r -> r.future.completeExceptionally(new IllegalStateException("服务正在关闭")));
+                return;
+            }
+
+            // 阈值不同的请求不能合并推理
+            Map<Double, List<Request>> groups = new LinkedHashMap<>();
+            for (Request request : batch) {
+                groups.computeIfAbsent(request.threshold, k -> new ArrayList<>()).add(request);
+            }
+            groups.forEach((threshold, group) -> dispatch(group, threshold));
+        }
+    }
+
+    private void dispatch(List<Request> group, double threshold) {
+        long start = System.nanoTime();
+        try {
+            if (batchSupported) {
+                sendBatch(group, threshold);
+            } else {
+                sendEach(group, threshold);
+            }
+        } catch (Exception e) {
+            group.forEach(r -> complete(r, null, e));
+        } finally {
+            batchSizeSummary.record(group.size());
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void sendBatch(List<Request> group, double threshold) {
+        TagImagesRequestDto requestBody = new TagImagesRequestDto();
+        requestBody.setImagePaths(group.stream().map(r -> r.imagePath).toList());
+        requestBody.setThreshold(threshold);
+
+        TagImagesResponseDto response;
+        try {
+            response = aiService.tagImages(requestBody);
+        } catch (WebClientResponseException.NotFound e) {
+            log.warn("AI 服务不支持批量打标，改为逐张调用");
+            batchSupported = false;
+            sendEach(group, threshold);
+            return;
+        }
+
+        if (response == null || !response.isSuccess() || response.getData() == null
+                || response.getData().size() != group.size()) {
+            String error = response != null && response.getError() != null ? response.getError() : "批量打标返回结果无效";
+            throw new RuntimeException(error);
+        }
+        for (int i = 0; i < group.size(); i++) {
+            TagImageResponseDto result = response.getData().get(i);
+            complete(group.get(i), result, null);
+        }
+    }
+
+    private void sendEach(List<Request> group, double threshold) {
+        for (Request request : group) {
+            TagImageRequestDto requestBody = new TagImageRequestDto();
+            requestBody.setImagePath(request.imagePath);
+            requestBody.setThreshold(threshold);
+            try {
+                complete(request, aiService.tagImage(requestBody), null);
+            } catch (Exception e) {
+                complete(request, null, e);
+            }
+        }
+    }
+
+    private void complete(Request request, TagImageResponseDto result, Exception error) {
+        requestTimer.record(System.nanoTime() - request.enqueuedAt, TimeUnit.NANOSECONDS);
+        if (error != null) {
+            request.future.completeExceptionally(error);
+        } else if (result == null || !result.isSuccess() || result.getData() == null) {
+            request.future.completeExceptionally(new RuntimeException(
+                    result != null && result.getError() != null ? result.getError() : "打标失败"));
+        } else {
+            request.future.complete(result.getData());
+        }
+    }
+
+    private static final class Request {
+        final String imagePath;
+        final double threshold;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<Map<String, List<String>>> future = new CompletableFuture<>();
+
+        Request(String imagePath, double threshold) {
+            this.imagePath = imagePath;
+            this.threshold = threshold;
+        }
+    }
+}
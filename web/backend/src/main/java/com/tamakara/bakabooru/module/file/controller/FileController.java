@@ -1,22 +1,30 @@
 package com.tamakara.bakabooru.module.file.controller;
 
+import com.tamakara.bakabooru.module.file.service.FileTransferService;
 import com.tamakara.bakabooru.module.file.service.SignatureService;
 import com.tamakara.bakabooru.module.gallery.entity.Image;
 import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
 import com.tamakara.bakabooru.module.file.service.StorageService;
-import com.tamakara.bakabooru.module.system.service.SystemSettingService;
+import com.tamakara.bakabooru.module.file.service.ThumbnailService;
+import com.tamakara.bakabooru.module.file.service.ThumbnailStore;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.net.MalformedURLException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
 
 @RestController
@@ -25,77 +33,96 @@ import java.util.Optional;
 @Tag(name = "文件", description = "文件访问操作")
 public class FileController {
 
+    // 文件按内容哈希寻址，内容永不改变，可长期缓存
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable().getHeaderValue();
+
     private final StorageService storageService;
     private final ImageRepository imageRepository;
     private final SignatureService signatureService;
-    private final SystemSettingService systemSettingService;
+    private final FileTransferService fileTransferService;
+    private final ThumbnailService thumbnailService;
+    private final ThumbnailStore thumbnailStore;
 
     @GetMapping("/{hash}")
-    @Operation(summary = "获取图片文件")
-    public ResponseEntity<Resource> getFile(
+    @Operation(summary = "获取图片文件", description = "支持 ETag 协商缓存与 Range 分段请求")
+    public void getFile(
             @PathVariable String hash,
             @RequestParam Long expiresAt,
-            @RequestParam String signature
-    ) {
-        try {
-            // 验证签名
-            boolean isValid = signatureService.validateSignature("/api/file/" + hash, expiresAt, signature);
-            if (!isValid) {
-                return ResponseEntity.status(403).build();
-            }
+            @RequestParam String signature,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        // 验证签名
+        boolean isValid = signatureService.validateSignature("/api/file/" + hash, expiresAt, signature);
+        if (!isValid) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
 
-            Path file = storageService.getImagePath(hash);
-            Resource resource = new UrlResource(file.toUri());
+        Path file = storageService.getImagePath(hash);
+        if (!Files.isReadable(file)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-            if (resource.exists() || resource.isReadable()) {
-                String filename = hash;
-                Optional<Image> image = imageRepository.findByHash(hash);
-                if (image.isPresent()) {
-                    filename = image.get().getTitle() + "." + image.get().getExtension();
-                }
+        // 客户端缓存仍有效时直接返回 304，不读取文件内容与数据库
+        String etag = "\"" + hash + "\"";
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+        if (new ServletWebRequest(request, response).checkNotModified(etag, Files.getLastModifiedTime(file).toMillis())) {
+            return;
+        }
 
-                return ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_JPEG)
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
-                        .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
+        String filename = hash;
+        MediaType contentType = MediaType.APPLICATION_OCTET_STREAM;
+        Optional<Image> image = imageRepository.findByHash(hash);
+        if (image.isPresent()) {
+            String extension = image.get().getExtension();
+            filename = image.get().getTitle() + (extension == null || extension.isEmpty() ? "" : "." + extension);
+            contentType = MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM);
         }
+
+        response.setContentType(contentType.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                .filename(filename, StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        fileTransferService.transfer(request, response, file, etag);
     }
 
     @GetMapping("/thumb/{hash}")
-    @Operation(summary = "获取缩略图")
-    public ResponseEntity<Resource> getThumbnail(
+    @Operation(summary = "获取缩略图", description = "w 为期望宽度，返回不小于该宽度的最小尺寸")
+    public void getThumbnail(
             @PathVariable String hash,
             @RequestParam Long expiresAt,
-            @RequestParam String signature
-    ) {
+            @RequestParam String signature,
+            @RequestParam(required = false) Integer w,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
         // 验证签名
         boolean isValid = signatureService.validateSignature("/api/file/thumb/" + hash, expiresAt, signature);
         if (!isValid) {
-            return ResponseEntity.status(403).build();
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
         }
 
-        try {
-            int quality = systemSettingService.getIntSetting("file.thumbnail.quality", 80);
-            int maxSize = systemSettingService.getIntSetting("file.thumbnail.max-size", 800);
-            Path file = storageService.getThumbnailPath(hash, quality, maxSize);
-            Resource resource = new UrlResource(file.toUri());
+        if (!Files.isReadable(storageService.getImagePath(hash))) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-            if (resource.exists() || resource.isReadable()) {
-                return ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_JPEG)
-                        .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
+        int quality = thumbnailService.getQuality();
+        int maxSize = thumbnailService.selectSize(w);
 
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
+        // 缩略图内容由原图哈希与缩略图参数决定，缓存有效时不必生成或读取缩略图
+        String etag = "\"" + hash + "_" + maxSize + "_" + quality + "\"";
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE);
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
         }
+
+        String name = thumbnailService.getThumbnail(hash, quality, maxSize);
+        response.setContentType(MediaType.IMAGE_JPEG_VALUE);
+        thumbnailStore.serve(request, response, name, etag);
     }
 }
-
@@ -0,0 +1,118 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.UUID;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * 每个缩略图一个文件，保存在 temp/thumbnail 目录下。
+ * 先写入临时文件再原子重命名，读取方不会看到写了一半的文件。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.thumbnail.store", havingValue = "file", matchIfMissing = true)
+public class FileThumbnailStore implements ThumbnailStore {
+
+    private final AppPaths appPaths;
+    private final FileTransferService fileTransferService;
+
+    @Override
+    public long size(String name) {
+        try {
+            return Files.size(resolve(name));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void put(String name, byte[] data) throws IOException {
+        Path target = resolve(name);
+        Path temp = target.resolveSibling(name + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.write(temp, data);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.warn("删除临时缩略图失败: {}", temp, e);
+            }
+        }
+    }
+
+    @Override
+    public void delete(String name) {
+        Path file = resolve(name);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除缩略图失败: {}", file, e);
+        }
+    }
+
+    @Override
+    public void serve(HttpServletRequest request, HttpServletResponse response, String name, String etag) throws IOException {
+        Path file = resolve(name);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, Files.getLastModifiedTime(file).toMillis());
+        fileTransferService.transfer(request, response, file, etag);
+    }
+
+    @Override
+    public void forEach(ObjLongConsumer<String> consumer) {
+        Path dir = appPaths.getThumbnailDir();
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.filter(Files::isRegularFile).forEach(path -> {
+                String name = path.getFileName().toString();
+                try {
+                    // 上次运行中断时遗留的临时文件
+                    if (name.endsWith(".tmp")) {
+                        Files.deleteIfExists(path);
+                        return;
+                    }
+                    consumer.accept(name, Files.size(path));
+                } catch (IOException e) {
+                    log.warn("读取缩略图失败: {}", path, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("扫描缩略图目录失败", e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try (Stream<Path> stream = Files.list(appPaths.getThumbnailDir())) {
+            stream.filter(Files::isRegularFile).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            throw new RuntimeException("清除缩略图失败.", e);
+        }
+    }
+
+    private Path resolve(String name) {
+        return appPaths.getThumbnailDir().resolve(name);
+    }
+}
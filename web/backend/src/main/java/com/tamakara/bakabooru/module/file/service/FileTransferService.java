@@ -0,0 +1,113 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 文件传输：不小于 48KB 的文件交给 Tomcat 的 sendfile，由内核直接发送到套接字；
+ * 更小的文件（主要是缩略图）以及不支持 sendfile 的连接按普通流复制到响应。
+ * 支持单段 Range 请求。打包存储的缩略图从读出的内存数据写出。
+ */
+@Service
+public class FileTransferService {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // 小于该大小的文件交给 sendfile 得不偿失（与 Tomcat 默认的 sendfileSize 一致）
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    /**
+     * 将文件写入响应。调用方负责设置 Content-Type、ETag 等响应头。
+     */
+    public void transfer(HttpServletRequest request, HttpServletResponse response, Path file, String etag) throws IOException {
+        Span span = prepare(request, response, Files.size(file), etag);
+        if (span == null) return;
+        long start = span.start();
+        long count = span.count();
+        long end = start + count - 1;
+
+        if (count >= SENDFILE_MIN_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (InputStream in = Files.newInputStream(file)) {
+            StreamUtils.copyRange(in, response.getOutputStream(), start, end);
+        }
+    }
+
+    /**
+     * 将内存中的数据（如打包存储读出的缩略图）写入响应。调用方负责设置 Content-Type、ETag 等响应头。
+     */
+    public void transfer(HttpServletRequest request, HttpServletResponse response, ByteBuffer data, String etag) throws IOException {
+        Span span = prepare(request, response, data.remaining(), etag);
+        if (span == null) return;
+        ByteBuffer slice = data.slice(data.position() + (int) span.start(), (int) span.count());
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        while (slice.hasRemaining()) {
+            out.write(slice);
+        }
+    }
+
+    // 处理 Range 并设置状态码与长度，返回需要发送的区间；无需发送内容时返回 null
+    private Span prepare(HttpServletRequest request, HttpServletResponse response, long length, String etag) {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = length - 1;
+        HttpRange range;
+        try {
+            range = resolveRange(request, etag);
+        } catch (IllegalArgumentException e) {
+            range = null;
+        }
+        if (range != null) {
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length);
+            if (start >= length || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return null;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || count == 0) {
+            return null;
+        }
+        return new Span(start, count);
+    }
+
+    // 只处理单段 Range；多段请求或 If-Range 不匹配时返回完整内容
+    private HttpRange resolveRange(HttpServletRequest request, String etag) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) return null;
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) return null;
+        List<HttpRange> ranges = HttpRange.parseRanges(header);
+        return ranges.size() == 1 ? ranges.get(0) : null;
+    }
+
+    private record Span(long start, long count) {
+    }
+}
@@ -0,0 +1,120 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.coobird.thumbnailator.filters.ImageFilter;
+import net.coobird.thumbnailator.util.exif.ExifFilterUtils;
+import net.coobird.thumbnailator.util.exif.ExifUtils;
+import net.coobird.thumbnailator.util.exif.Orientation;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 受内存预算限制的原图解码：先读取文件头中的尺寸，再通过 ImageReadParam 的源图像子采样
+ * 直接解码到接近目标分辨率（不低于目标尺寸的两倍，后续缩放仍有足够的像素保证质量），
+ * 解码占用的内存只与缩略图尺寸有关，与原图尺寸无关。
+ * 同时进行的解码按像素数从全局预算中申请配额，预算不足时等待。
+ */
+@Slf4j
+@Service
+public class ImageDecodeService {
+
+    // 每个像素按 4 字节（ARGB）估算
+    private static final long BYTES_PER_PIXEL = 4;
+
+    // 预算以 1024 像素为单位
+    private static final int PIXELS_PER_PERMIT = 1024;
+
+    private final int totalPermits;
+    private final Semaphore budget;
+
+    public ImageDecodeService() {
+        // 解码最多占用四分之一的堆
+        long pixels = Runtime.getRuntime().maxMemory() / 4 / BYTES_PER_PIXEL;
+        this.totalPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, pixels / PIXELS_PER_PERMIT));
+        this.budget = new Semaphore(totalPermits, true);
+    }
+
+    /**
+     * 解码原图并交给 processor 处理，处理结束前一直占用内存预算。
+     * 解码结果不小于 maxSize×maxSize 范围内等比缩放后尺寸的两倍（原图更小时为原图尺寸），
+     * 并已按 EXIF 方向旋转。
+     */
+    public void decode(Path source, int maxSize, ImageProcessor processor) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                throw new IOException("无法读取图片: " + source);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("不支持的图片格式: " + source);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                int subsampling = subsampling(width, height, maxSize);
+                long pixels = (long) ceilDiv(width, subsampling) * ceilDiv(height, subsampling);
+                // 单张图片超过全部预算时独占预算，避免永远等待
+                int permits = (int) Math.min(totalPermits, Math.max(1, pixels / PIXELS_PER_PERMIT));
+
+                budget.acquire(permits);
+                try {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    BufferedImage image = orient(reader.read(0, param), reader);
+                    processor.process(image);
+                } finally {
+                    budget.release(permits);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("等待解码内存预算时被中断", e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // 子采样后的尺寸不小于目标尺寸的两倍
+    static int subsampling(int width, int height, int maxSize) {
+        double scale = Math.min(1.0, Math.min((double) maxSize / width, (double) maxSize / height));
+        int factor = (int) Math.floor(1.0 / scale / 2);
+        return Math.max(1, factor);
+    }
+
+    private BufferedImage orient(BufferedImage image, ImageReader reader) {
+        Orientation orientation;
+        try {
+            orientation = ExifUtils.getExifOrientation(reader, 0);
+        } catch (Exception e) {
+            // 元数据损坏时按原方向输出
+            log.debug("读取 EXIF 方向失败", e);
+            return image;
+        }
+        if (orientation == null || orientation == Orientation.TOP_LEFT) {
+            return image;
+        }
+        ImageFilter filter = ExifFilterUtils.getFilterForOrientation(orientation);
+        return filter.apply(image);
+    }
+
+    @FunctionalInterface
+    public interface ImageProcessor {
+        void process(BufferedImage image) throws IOException;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
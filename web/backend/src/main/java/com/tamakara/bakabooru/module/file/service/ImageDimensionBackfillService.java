@@ -0,0 +1,88 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.module.gallery.service.SearchCacheService;
+import com.tamakara.bakabooru.utils.ImageHeaderUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.awt.Dimension;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 尺寸补全：启动后在后台为缺少宽高的图片（此前只有 JPEG 能读取尺寸）读取文件头，
+ * 按 id 分批查询，每批并行读取后在一个事务中批量更新。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageDimensionBackfillService {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final StorageService storageService;
+    private final SearchCacheService searchCacheService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private record Row(long id, String hash) {
+    }
+
+    // 只读取文件头，很快完成，排在缩略图补全之前执行，尽早修正按尺寸过滤的结果
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @Async("maintenanceExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long lastId = 0;
+        int updated = 0;
+        int failed = 0;
+        while (true) {
+            List<Row> rows = jdbcTemplate.query(
+                    "SELECT id, hash FROM images WHERE (width IS NULL OR height IS NULL) AND id > ? ORDER BY id LIMIT ?",
+                    (rs, i) -> new Row(rs.getLong(1), rs.getString(2)), lastId, BATCH_SIZE);
+            if (rows.isEmpty()) break;
+            lastId = rows.get(rows.size() - 1).id();
+
+            List<Object[]> updates = rows.parallelStream()
+                    .map(this::probe)
+                    .filter(Objects::nonNull)
+                    .toList();
+            if (!updates.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status ->
+                        jdbcTemplate.batchUpdate("UPDATE images SET width = ?, height = ? WHERE id = ?", updates));
+            }
+            updated += updates.size();
+            failed += rows.size() - updates.size();
+        }
+
+        if (updated > 0) {
+            searchCacheService.invalidate();
+        }
+        if (updated > 0 || failed > 0) {
+            log.info("图片尺寸补全完成，更新 {} 张，无法读取 {} 张", updated, failed);
+        }
+    }
+
+    private Object[] probe(Row row) {
+        if (row.hash() == null) return null;
+        Path source = storageService.getImagePath(row.hash());
+        if (!Files.isReadable(source)) return null;
+        try {
+            Dimension dimension = ImageHeaderUtils.readDimensions(source);
+            return dimension != null ? new Object[]{dimension.width, dimension.height, row.id()} : null;
+        } catch (Exception e) {
+            log.warn("读取图片尺寸失败: {}", row.hash(), e);
+            return null;
+        }
+    }
+}
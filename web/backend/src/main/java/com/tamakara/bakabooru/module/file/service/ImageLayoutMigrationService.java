@@ -0,0 +1,99 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 原图目录布局迁移：启动后在后台把旧的平铺布局 image/hash 分批移动到分片布局 image/ab/cd/hash。
+ * 迁移期间服务照常运行，{@link StorageService#getImagePath} 在分片路径不存在时回退到旧路径。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageLayoutMigrationService {
+
+    private static final int BATCH_SIZE = 500;
+
+    // 每批之间的间隔，避免迁移占满磁盘 IO
+    private static final long BATCH_PAUSE_MILLIS = 200;
+
+    private final AppPaths appPaths;
+    private final StorageService storageService;
+
+    @Async("maintenanceExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        int moved = 0;
+        int failed = 0;
+        try {
+            List<Path> batch;
+            while (!(batch = nextBatch()).isEmpty()) {
+                int before = moved;
+                for (Path file : batch) {
+                    try {
+                        move(file);
+                        moved++;
+                    } catch (IOException e) {
+                        failed++;
+                        log.warn("迁移原图失败: {}", file, e);
+                    }
+                }
+                if (moved == before) break;
+                Thread.sleep(BATCH_PAUSE_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException e) {
+            log.warn("扫描原图目录失败", e);
+            return;
+        }
+
+        if (failed == 0) {
+            storageService.markLegacyLayoutMigrated();
+        }
+        if (moved > 0 || failed > 0) {
+            log.info("原图目录迁移完成，移动 {} 个文件，失败 {} 个", moved, failed);
+        }
+    }
+
+    // 原图目录第一层中待迁移的文件（分片目录与无法分片的短名称除外）
+    private List<Path> nextBatch() throws IOException {
+        List<Path> batch = new ArrayList<>(BATCH_SIZE);
+        Path imageDir = appPaths.getImageDir();
+        if (!Files.isDirectory(imageDir)) return batch;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(imageDir, Files::isRegularFile)) {
+            for (Path file : stream) {
+                if (file.getFileName().toString().length() < 4) continue;
+                batch.add(file);
+                if (batch.size() >= BATCH_SIZE) break;
+            }
+        }
+        return batch;
+    }
+
+    private void move(Path file) throws IOException {
+        Path target = storageService.getShardedImagePath(file.getFileName().toString());
+        Files.createDirectories(target.getParent());
+        if (Files.exists(target)) {
+            // 内容按哈希寻址，已存在的分片文件与旧文件相同
+            Files.delete(file);
+            return;
+        }
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file, target);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * 打包存储：缩略图追加写入 temp/thumbpack 下的包文件（pack-N.dat），每个包对应一个记录
+ * 名称、偏移与长度的键日志（pack-N.keys），由内存映射的 {@link ThumbnailPackIndex} 定位。
+ * 包文件的通道常驻打开，读取时按位置读出缩略图，不需要为每个缩略图打开和关闭文件。
+ * 删除时移除索引记录并在键日志中追加删除记录，有效数据比例过低的包由后台任务压缩。
+ * 索引丢失或损坏时按包编号顺序重放键日志重建。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.thumbnail.store", havingValue = "pack")
+public class PackThumbnailStore implements ThumbnailStore {
+
+    // 单个包文件的上限，写满后新建下一个包
+    private static final long MAX_PACK_SIZE = 256L * 1024 * 1024;
+
+    // 有效数据低于该比例的包会被压缩
+    private static final double COMPACT_THRESHOLD = 0.5;
+
+    // 键日志中表示删除的偏移
+    private static final long DELETED = -1;
+
+    private final AppPaths appPaths;
+    private final FileTransferService fileTransferService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Pack> packs = new TreeMap<>();
+    private ThumbnailPackIndex index;
+    private Pack active;
+
+    @PostConstruct
+    public void open() throws IOException {
+        Path dir = getPackDir();
+        Files.createDirectories(dir);
+        try (Stream<Path> stream = Files.list(dir)) {
+            for (Path path : stream.toList()) {
+                String name = path.getFileName().toString();
+                if (name.startsWith("pack-") && name.endsWith(".dat")) {
+                    int id = Integer.parseInt(name.substring(5, name.length() - 4));
+                    packs.put(id, Pack.open(dir, id));
+                }
+            }
+        }
+
+        index = ThumbnailPackIndex.open(getIndexFile());
+        if (index == null) {
+            rebuildIndex();
+        }
+        index.forEachLocation(location -> {
+            Pack pack = packs.get(location.pack());
+            if (pack != null) pack.liveBytes += location.length();
+        });
+
+        active = packs.isEmpty() ? createPack(1) : packs.lastEntry().getValue();
+        log.info("缩略图打包存储: {} 个包，{} 个缩略图", packs.size(), index.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            index.close();
+            for (Pack pack : packs.values()) {
+                pack.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long size(String name) {
+        lock.readLock().lock();
+        try {
+            ThumbnailPackIndex.Location location = index.get(name);
+            return location == null ? -1 : location.length();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(String name, byte[] data) throws IOException {
+        lock.writeLock().lock();
+        try {
+            append(name, ByteBuffer.wrap(data));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(String name) {
+        lock.writeLock().lock();
+        try {
+            ThumbnailPackIndex.Location previous = index.remove(name);
+            if (previous != null) {
+                release(previous);
+                // 记录删除，索引重建时不会恢复已删除的缩略图
+                active.appendKey(name, DELETED, 0);
+            }
+        } catch (IOException e) {
+            log.warn("记录缩略图删除失败: {}", name, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void serve(HttpServletRequest request, HttpServletResponse response, String name, String etag) throws IOException {
+        ByteBuffer data;
+        lock.readLock().lock();
+        try {
+            ThumbnailPackIndex.Location location = index.get(name);
+            Pack pack = location == null ? null : packs.get(location.pack());
+            if (pack == null) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            // 持有读锁时读出，压缩或清除不会在读取过程中关闭包文件
+            data = pack.read(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+        fileTransferService.transfer(request, response, data, etag);
+    }
+
+    @Override
+    public void forEach(ObjLongConsumer<String> consumer) {
+        lock.readLock().lock();
+        try {
+            for (Pack pack : packs.values()) {
+                pack.readKeys((name, location) -> {
+                    // 键日志中被覆盖或删除的记录与索引不一致，跳过
+                    if (location.equals(index.get(name))) {
+                        consumer.accept(name, location.length());
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Pack pack : packs.values()) {
+                pack.delete();
+            }
+            packs.clear();
+            index.clear();
+            active = createPack(1);
+        } catch (IOException e) {
+            throw new RuntimeException("清除缩略图失败.", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 压缩有效数据比例过低的包：把仍被索引引用的缩略图复制到当前写入的包，然后删除旧包。
+     * 旧包中针对更早的包中写入的删除记录转移到当前写入的包，重建索引时不会恢复已删除的缩略图。
+     * 每复制一条记录加一次锁，压缩期间读写不会被长时间阻塞。
+     */
+    @Scheduled(initialDelay = 10, fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void compact() {
+        List<Pack> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Pack pack : packs.values()) {
+                if (pack != active && pack.liveBytes < pack.end * COMPACT_THRESHOLD) {
+                    candidates.add(pack);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (Pack pack : candidates) {
+            try {
+                long freed = pack.end - pack.liveBytes;
+                Set<String> deleted = new HashSet<>();
+                pack.readKeys((name, location) -> {
+                    if (location.offset() == DELETED) {
+                        deleted.add(name);
+                        return;
+                    }
+                    lock.writeLock().lock();
+                    try {
+                        if (location.equals(index.get(name))) {
+                            append(name, pack.read(location));
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                });
+
+                // 只有更早的包中写入过的名称需要保留删除记录
+                Set<String> carried = new HashSet<>();
+                if (!deleted.isEmpty()) {
+                    lock.readLock().lock();
+                    try {
+                        for (Pack earlier : packs.headMap(pack.id).values()) {
+                            earlier.readKeys((name, location) -> {
+                                if (location.offset() != DELETED && deleted.contains(name)) {
+                                    carried.add(name);
+                                }
+                            });
+                        }
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+
+                lock.writeLock().lock();
+                try {
+                    for (String name : carried) {
+                        // 之后重新写入的名称已有更新的记录
+                        if (index.get(name) == null) {
+                            active.appendKey(name, DELETED, 0);
+                        }
+                    }
+                    packs.remove(pack.id);
+                    pack.delete();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("压缩缩略图包 {}，释放 {} 字节", pack.id, freed);
+            } catch (Exception e) {
+                log.warn("压缩缩略图包失败: {}", pack.id, e);
+            }
+        }
+        lock.readLock().lock();
+        try {
+            index.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 调用方持有写锁
+    private void append(String name, ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (length > MAX_PACK_SIZE) {
+            throw new IOException("缩略图过大: " + length);
+        }
+        if (active.end + length > MAX_PACK_SIZE) {
+            active.force();
+            active = createPack(active.id + 1);
+        }
+        long offset = active.end;
+        active.write(offset, data);
+        active.end += length;
+        active.liveBytes += length;
+        active.appendKey(name, offset, length);
+        release(index.put(name, new ThumbnailPackIndex.Location(active.id, offset, length)));
+    }
+
+    private void release(ThumbnailPackIndex.Location previous) {
+        if (previous == null) return;
+        Pack pack = packs.get(previous.pack());
+        if (pack != null) pack.liveBytes -= previous.length();
+    }
+
+    private Pack createPack(int id) throws IOException {
+        Pack pack = Pack.open(getPackDir(), id);
+        packs.put(id, pack);
+        return pack;
+    }
+
+    private void rebuildIndex() throws IOException {
+        log.warn("缩略图索引不存在或已损坏，从键日志重建");
+        ThumbnailPackIndex rebuilt = ThumbnailPackIndex.create(getIndexFile(), 0);
+        for (Pack pack : packs.values()) {
+            pack.readKeys((name, location) -> {
+                try {
+                    if (location.offset() == DELETED) {
+                        rebuilt.remove(name);
+                    } else {
+                        rebuilt.put(name, location);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        index = rebuilt;
+    }
+
+    private Path getPackDir() {
+        return appPaths.getThumbnailPackDir();
+    }
+
+    private Path getIndexFile() {
+        return getPackDir().resolve("index.dat");
+    }
+
+    /**
+     * 单个包文件。通过 FileChannel 按位置读写，多个读取可以同时进行；
+     * 写入位置由键日志中最后一条记录确定。
+     */
+    private static final class Pack {
+
+        final int id;
+        final Path dataFile;
+        final Path keyFile;
+        final FileChannel channel;
+        final FileChannel keyChannel;
+        long end;
+        long liveBytes;
+
+        private Pack(int id, Path dataFile, Path keyFile) throws IOException {
+            this.id = id;
+            this.dataFile = dataFile;
+            this.keyFile = keyFile;
+            this.channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.keyChannel = FileChannel.open(keyFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        static Pack open(Path dir, int id) throws IOException {
+            String base = String.format("pack-%06d", id);
+            Pack pack = new Pack(id, dir.resolve(base + ".dat"), dir.resolve(base + ".keys"));
+            pack.readKeys((name, location) -> pack.end = Math.max(pack.end, location.offset() + location.length()));
+            // 截掉旧版本按最大大小预分配的部分与未记录的写入
+            if (pack.channel.size() > pack.end) {
+                pack.channel.truncate(pack.end);
+            }
+            return pack;
+        }
+
+        ByteBuffer read(ThumbnailPackIndex.Location location) throws IOException {
+            ByteBuffer data = ByteBuffer.allocate(location.length());
+            while (data.hasRemaining()) {
+                if (channel.read(data, location.offset() + data.position()) < 0) {
+                    throw new EOFException("缩略图包不完整: " + dataFile);
+                }
+            }
+            return data.flip();
+        }
+
+        void write(long offset, ByteBuffer data) throws IOException {
+            long position = offset;
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+        }
+
+        void appendKey(String name, long offset, int length) throws IOException {
+            ByteBuffer line = ByteBuffer.wrap((name + "\t" + offset + "\t" + length + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                keyChannel.write(line);
+            }
+        }
+
+        // 按写入顺序遍历键日志，删除记录的偏移为 DELETED；忽略异常中断留下的不完整记录
+        void readKeys(KeyConsumer consumer) {
+            if (!Files.exists(keyFile)) return;
+            try (BufferedReader reader = Files.newBufferedReader(keyFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split("\t");
+                    if (parts.length != 3) continue;
+                    try {
+                        long offset = Long.parseLong(parts[1]);
+                        int length = Integer.parseInt(parts[2]);
+                        if (offset < DELETED || length < 0 || offset + length > MAX_PACK_SIZE) continue;
+                        consumer.accept(parts[0], new ThumbnailPackIndex.Location(id, offset, length));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("读取缩略图键日志失败: {}", keyFile, e);
+            }
+        }
+
+        void force() {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                log.warn("同步缩略图包失败: {}", dataFile, e);
+            }
+        }
+
+        void close() {
+            force();
+            try {
+                channel.close();
+                keyChannel.close();
+            } catch (IOException e) {
+                log.warn("关闭缩略图包失败: {}", dataFile, e);
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(dataFile);
+                Files.deleteIfExists(keyFile);
+            } catch (IOException e) {
+                log.warn("删除缩略图包失败: {}", dataFile, e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface KeyConsumer {
+        void accept(String name, ThumbnailPackIndex.Location location);
+    }
+}
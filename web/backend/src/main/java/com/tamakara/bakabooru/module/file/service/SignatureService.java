@@ -5,6 +5,11 @@ import com.tamakara.bakabooru.utils.SignatureUtils;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.time.Instant;
 
 @Service
@@ -13,15 +18,36 @@ public class SignatureService {
 
     private final SystemSettingService systemSettingService;
 
+    // 未设置密码时使用进程内随机密钥，签名在重启后失效
+    private final byte[] fallbackKey = randomKey();
+
+    // 当前密码对应的密钥，密码变化时重建
+    private volatile SigningKey signingKey;
+
+    // 每个线程复用已初始化的 Mac，密钥变化后重新初始化
+    private final ThreadLocal<ThreadMac> threadMac = new ThreadLocal<>();
+
     private String getEncodedPassword() {
         return systemSettingService.getSetting("auth.password", "");
     }
 
-    public String generateSignedUrl(String path, long expires) {
-        String storedEncodedPassword = getEncodedPassword();
+    /**
+     * 生成签名 URL。过期时间按 file.url.bucket 秒向上取整，
+     * 同一时间段内同一路径得到相同的 URL，便于浏览器与代理缓存。
+     */
+    public String generateSignedUrl(String path) {
+        long expires = systemSettingService.getLongSetting("file.url.expire", 86400);
+        long bucket = systemSettingService.getLongSetting("file.url.bucket", 3600);
         long expiresAt = Instant.now().getEpochSecond() + expires;
+        if (bucket > 1) {
+            expiresAt = Math.ceilDiv(expiresAt, bucket) * bucket;
+        }
+        return generateSignedUrl(path, expiresAt);
+    }
+
+    private String generateSignedUrl(String path, long expiresAt) {
         // 生成签名
-        String signature = SignatureUtils.generateSignature(path, expiresAt, storedEncodedPassword);
+        String signature = SignatureUtils.generateSignature(mac(), path, expiresAt);
         // 生成带签名的 URL
         return path + "?expiresAt=" + expiresAt + "&signature=" + signature;
     }
@@ -34,10 +60,44 @@ public class SignatureService {
             return false;
         }
 
-        String storedEncodedPassword = getEncodedPassword();
         // 重新计算签名
-        String expectedSignature = SignatureUtils.generateSignature(path, expiresAt, storedEncodedPassword);
+        String expectedSignature = SignatureUtils.generateSignature(mac(), path, expiresAt);
         // 比较签名
-        return expectedSignature.equals(signature);
+        return MessageDigest.isEqual(
+                expectedSignature.getBytes(StandardCharsets.UTF_8),
+                signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac mac() {
+        SigningKey key = currentKey();
+        ThreadMac cached = threadMac.get();
+        if (cached == null || cached.key() != key) {
+            cached = new ThreadMac(key, SignatureUtils.createMac(key.spec()));
+            threadMac.set(cached);
+        }
+        return cached.mac();
+    }
+
+    private SigningKey currentKey() {
+        String password = getEncodedPassword();
+        SigningKey key = signingKey;
+        if (key == null || !key.password().equals(password)) {
+            byte[] secret = password.isEmpty() ? fallbackKey : password.getBytes(StandardCharsets.UTF_8);
+            key = new SigningKey(password, SignatureUtils.createKey(secret));
+            signingKey = key;
+        }
+        return key;
+    }
+
+    private static byte[] randomKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    private record SigningKey(String password, SecretKeySpec spec) {
+    }
+
+    private record ThreadMac(SigningKey key, Mac mac) {
     }
 }
@@ -1,90 +1,148 @@
 package com.tamakara.bakabooru.module.file.service;
 
 import com.tamakara.bakabooru.config.AppPaths;
+import com.tamakara.bakabooru.utils.FileUtils;
 import lombok.RequiredArgsConstructor;
-import net.coobird.thumbnailator.Thumbnails;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.stream.Stream;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class StorageService {
 
-    private final AppPaths appPaths;
+    private static final int BUFFER_SIZE = 64 * 1024;
 
-    public void storePendingImage(String taskId, MultipartFile file) {
-        try {
-            if (file.isEmpty()) {
-                throw new RuntimeException("文件为空.");
-            }
-            // 待处理文件路径
-            Path pendingFile = appPaths.getPendingDir().resolve(taskId).normalize().toAbsolutePath();
-            // 存储文件
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, pendingFile, StandardCopyOption.REPLACE_EXISTING);
+    private final AppPaths appPaths;
+    private final ThumbnailCacheService thumbnailCacheService;
+
+    // 是否可能还有旧的平铺布局原图，迁移完成后为 false
+    private volatile boolean legacyLayout = true;
+
+    /**
+     * 存储待处理文件，同时计算 SHA-256，返回十六进制哈希。
+     * 上传内容只读取一次，经固定大小的缓冲区写入磁盘，内存占用与文件大小无关。
+     */
+    public String storePendingImage(String taskId, MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new RuntimeException("文件为空.");
+        }
+        // 待处理文件路径
+        Path pendingFile = appPaths.getPendingDir().resolve(taskId).normalize().toAbsolutePath();
+        MessageDigest digest = FileUtils.sha256();
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest);
+             OutputStream outputStream = Files.newOutputStream(pendingFile)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
             }
-
         } catch (IOException e) {
+            try {
+                Files.deleteIfExists(pendingFile);
+            } catch (IOException ignored) {
+            }
             throw new RuntimeException("待处理文件存储失败.", e);
         }
+        return FileUtils.toHex(digest.digest());
     }
 
     public void storeImage(String taskId, String hash) {
         try {
             Path pendingFile = appPaths.getPendingDir().resolve(taskId).normalize().toAbsolutePath();
-            Path destinationFile = appPaths.getImageDir().resolve(hash).normalize().toAbsolutePath();
-            Files.copy(pendingFile, destinationFile);
+            Path destinationFile = getShardedImagePath(hash).normalize().toAbsolutePath();
+            Files.createDirectories(destinationFile.getParent());
+            // 内容按哈希寻址，已存在的文件内容相同
+            if (Files.exists(destinationFile)) return;
+            // 硬链接而不是移动：待处理文件保留到入库成功后再删除，中途崩溃时任务仍可恢复
+            try {
+                Files.createLink(destinationFile, pendingFile);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // 不支持硬链接时复制到临时文件再原子替换，中断时不会留下不完整的原图
+                Path temp = destinationFile.resolveSibling(destinationFile.getFileName() + ".tmp");
+                Files.copy(pendingFile, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, destinationFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
         } catch (Exception e) {
             throw new RuntimeException("图片存储失败.", e);
         }
     }
 
-    public Path getImagePath(String hash) {
-        return appPaths.getImageDir().resolve(hash);
+    public void deletePendingImage(String taskId) {
+        try {
+            Files.deleteIfExists(getPendingImagePath(taskId));
+        } catch (IOException e) {
+            log.warn("删除待处理文件失败,taskId:" + taskId, e);
+        }
     }
 
-    public Path getPendingImagePath(String hash) {
-        return appPaths.getPendingDir().resolve(hash);
+    /**
+     * 原图路径。迁移完成前分片路径不存在时回退到旧的平铺路径 image/hash。
+     */
+    public Path getImagePath(String hash) {
+        Path sharded = getShardedImagePath(hash);
+        if (!legacyLayout || Files.exists(sharded)) {
+            return sharded;
+        }
+        Path legacy = appPaths.getImageDir().resolve(hash);
+        return Files.exists(legacy) ? legacy : sharded;
     }
 
-    public Path getThumbnailPath(String hash, int quality, int maxSize) {
-        Path source = appPaths.getImageDir().resolve(hash);
-        Path target = appPaths.getThumbnailDir().resolve(hash + "_" + maxSize + "_" + quality + ".jpg");
-
-        if (Files.exists(target)) {
-            return target;
+    /**
+     * 分片路径 image/ab/cd/hash，避免单个目录中文件过多。哈希过短时不分片。
+     */
+    public Path getShardedImagePath(String hash) {
+        Path imageDir = appPaths.getImageDir();
+        if (hash.length() < 4) {
+            return imageDir.resolve(hash);
         }
+        return imageDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
 
-        try (InputStream in = Files.newInputStream(source);
-             OutputStream out = Files.newOutputStream(target)) {
-
-            Thumbnails.of(in)
-                    .size(maxSize, maxSize)
-                    .outputQuality(quality / 100.0)
-                    .outputFormat("jpg")
-                    .toOutputStream(out);
+    /**
+     * 原图相对数据目录的路径（以 / 分隔），供 AI 服务读取文件。
+     */
+    public String getImageRelativePath(String hash) {
+        return appPaths.getDataDir().relativize(getImagePath(hash).toAbsolutePath().normalize())
+                .toString().replace('\\', '/');
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException("生成缩略图失败.", e);
-        }
+    /**
+     * 旧布局的原图已全部迁移，之后查找不再回退。
+     */
+    public void markLegacyLayoutMigrated() {
+        legacyLayout = false;
+    }
 
-        return target;
+    public Path getPendingImagePath(String hash) {
+        return appPaths.getPendingDir().resolve(hash);
     }
 
     public void clearCache() {
         Path dir = appPaths.getTempDir();
         if (!Files.exists(dir)) return;
 
+        // 待处理的上传文件不属于缓存，缩略图由缩略图缓存自行清理
+        Path pendingDir = appPaths.getPendingDir();
+        Path thumbnailDir = appPaths.getThumbnailDir();
+        Path thumbnailPackDir = appPaths.getThumbnailPackDir();
         try (Stream<Path> stream = Files.walk(dir)) {
             stream.filter(Files::isRegularFile)
+                    .filter(path -> !path.startsWith(pendingDir)
+                            && !path.startsWith(thumbnailDir)
+                            && !path.startsWith(thumbnailPackDir))
                     .forEach(path -> {
                         try {
                             Files.deleteIfExists(path);
@@ -94,5 +152,6 @@ public class StorageService {
         } catch (IOException e) {
             throw new RuntimeException("清除缓存失败.", e);
         }
+        thumbnailCacheService.clear();
     }
 }
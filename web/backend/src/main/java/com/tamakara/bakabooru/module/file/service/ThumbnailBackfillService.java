@@ -0,0 +1,63 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 缩略图补全：启动后在后台为已有图片生成尺寸阶梯中缺失的缩略图，新图片优先。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ThumbnailBackfillService {
+
+    // 解码线程池繁忙时的等待时间
+    private static final long BUSY_WAIT_MILLIS = 1000;
+
+    private final ImageRepository imageRepository;
+    private final StorageService storageService;
+    private final ThumbnailService thumbnailService;
+
+    @Async("maintenanceExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        List<String> hashes = imageRepository.findAllHashes();
+        int failed = 0;
+        for (String hash : hashes) {
+            Path source = storageService.getImagePath(hash);
+            if (!Files.isReadable(source)) continue;
+            try {
+                generate(hash, source);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failed++;
+                log.warn("补全缩略图失败: {}", hash, e);
+            }
+        }
+        log.info("缩略图补全完成，共 {} 张图片，失败 {} 张", hashes.size(), failed);
+    }
+
+    private void generate(String hash, Path source) throws InterruptedException {
+        while (true) {
+            try {
+                thumbnailService.generateVariants(hash, source);
+                return;
+            } catch (TaskRejectedException e) {
+                // 前台请求优先，稍后重试
+                Thread.sleep(BUSY_WAIT_MILLIS);
+            }
+        }
+    }
+}
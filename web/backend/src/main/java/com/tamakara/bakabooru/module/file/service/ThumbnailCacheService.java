@@ -0,0 +1,216 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import com.tamakara.bakabooru.module.system.service.SystemSettingService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * 缩略图磁盘缓存：在内存中记录每个缩略图的大小与最近访问时间，总大小超过配额
+ * （file.thumbnail.cache-size）时先淘汰已失效的缩略图，再按最近最少使用淘汰。
+ * 访问时间保存在 temp/thumbnail.index 中，重启后继续生效。只管理缩略图存储，不会触及待处理的上传文件。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ThumbnailCacheService {
+
+    private static final long DEFAULT_QUOTA = 1024L * 1024 * 1024;
+
+    // 淘汰到配额的该比例为止，避免刚淘汰完又超出配额
+    private static final double LOW_WATERMARK = 0.9;
+
+    private final AppPaths appPaths;
+    private final SystemSettingService systemSettingService;
+    private final ThumbnailStore thumbnailStore;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // 访问时间是否有未保存的变化
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        load();
+
+        Gauge.builder("thumbnail.cache.entries", entries, Map::size).register(meterRegistry);
+        Gauge.builder("thumbnail.cache.bytes", totalBytes, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("thumbnail.cache.quota", this, ThumbnailCacheService::getQuota).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("thumbnail.cache.hit.ratio", this, ThumbnailCacheService::hitRatio).register(meterRegistry);
+        FunctionCounter.builder("thumbnail.cache.requests", hits, AtomicLong::get).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("thumbnail.cache.requests", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("thumbnail.cache.evictions", evictions, AtomicLong::get).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        persist();
+    }
+
+    public long getQuota() {
+        return systemSettingService.getLongSetting("file.thumbnail.cache-size", DEFAULT_QUOTA);
+    }
+
+    /**
+     * 记录一次缩略图访问。缩略图存在时视为命中并更新访问时间。
+     */
+    public boolean touch(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            // 索引之外的缩略图（如迁移导入）补记到索引中
+            if (thumbnailStore.size(name) < 0) {
+                misses.incrementAndGet();
+                return false;
+            }
+            add(name);
+        } else {
+            entry.lastAccess = System.currentTimeMillis();
+        }
+        hits.incrementAndGet();
+        dirty.set(true);
+        return true;
+    }
+
+    /**
+     * 新生成的缩略图写入后调用。
+     */
+    public void add(String name) {
+        long size = thumbnailStore.size(name);
+        if (size < 0) return;
+        Entry previous = entries.put(name, new Entry(size, System.currentTimeMillis()));
+        totalBytes.addAndGet(size - (previous == null ? 0 : previous.size));
+        dirty.set(true);
+    }
+
+    /**
+     * 总大小超过配额时淘汰缩略图：先淘汰 obsolete 判定为失效的，再按最近访问时间从旧到新淘汰。
+     */
+    public void evict(Predicate<String> obsolete) {
+        long quota = getQuota();
+        if (totalBytes.get() > quota) {
+            long target = (long) (quota * LOW_WATERMARK);
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort(Comparator
+                    .comparing((Map.Entry<String, Entry> e) -> !obsolete.test(e.getKey()))
+                    .thenComparingLong(e -> e.getValue().lastAccess));
+
+            int evicted = 0;
+            for (Map.Entry<String, Entry> candidate : candidates) {
+                if (totalBytes.get() <= target) break;
+                if (remove(candidate.getKey(), candidate.getValue())) evicted++;
+            }
+            log.info("缩略图缓存淘汰 {} 个缩略图，当前 {} 字节，配额 {} 字节", evicted, totalBytes.get(), quota);
+        }
+        if (dirty.get()) {
+            persist();
+        }
+    }
+
+    /**
+     * 删除所有缩略图并清空索引。
+     */
+    public void clear() {
+        entries.clear();
+        totalBytes.set(0);
+        thumbnailStore.clear();
+        persist();
+    }
+
+    private boolean remove(String name, Entry entry) {
+        if (!entries.remove(name, entry)) return false;
+        totalBytes.addAndGet(-entry.size);
+        evictions.incrementAndGet();
+        dirty.set(true);
+        thumbnailStore.delete(name);
+        return true;
+    }
+
+    private double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    // 遍历缩略图存储重建索引，访问时间取索引文件中的记录，没有记录的视为刚访问过
+    private void load() {
+        Map<String, Long> persisted = new HashMap<>();
+        Path indexFile = getIndexFile();
+        if (Files.exists(indexFile)) {
+            try (Stream<String> lines = Files.lines(indexFile, StandardCharsets.UTF_8)) {
+                lines.forEach(line -> {
+                    int tab = line.indexOf('\t');
+                    if (tab <= 0) return;
+                    try {
+                        persisted.put(line.substring(0, tab), Long.parseLong(line.substring(tab + 1)));
+                    } catch (NumberFormatException ignored) {
+                    }
+                });
+            } catch (IOException e) {
+                log.warn("读取缩略图缓存索引失败", e);
+            }
+        }
+
+        thumbnailStore.forEach((name, size) -> {
+            Long lastAccess = persisted.get(name);
+            entries.put(name, new Entry(size, lastAccess != null ? lastAccess : System.currentTimeMillis()));
+            totalBytes.addAndGet(size);
+        });
+        log.info("缩略图缓存: {} 个缩略图，{} 字节", entries.size(), totalBytes.get());
+    }
+
+    private synchronized void persist() {
+        dirty.set(false);
+        Path indexFile = getIndexFile();
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(Long.toString(entry.getValue().lastAccess));
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            dirty.set(true);
+            log.warn("保存缩略图缓存索引失败", e);
+        }
+    }
+
+    private Path getIndexFile() {
+        return appPaths.getTempDir().resolve("thumbnail.index");
+    }
+
+    private static final class Entry {
+        final long size;
+        volatile long lastAccess;
+
+        Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * 打包存储的内存映射索引：开放寻址哈希表，缩略图名称 → (包编号, 偏移, 长度)。
+ * 名称以两个独立的 64 位指纹表示，记录定长 32 字节，查找只访问映射内存，不产生系统调用。
+ * 非线程安全，由调用方加锁。映射由垃圾回收释放，文件始终原地修改，不需要在映射期间删除或替换。
+ */
+class ThumbnailPackIndex implements AutoCloseable {
+
+    private static final int MAGIC = 0x54504958; // "TPIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final double MAX_LOAD = 0.7;
+
+    // 删除标记（保留指纹以维持探测链）
+    private static final int TOMBSTONE = -1;
+
+    private final Path file;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+    // 已占用的槽位（含删除标记）
+    private int used;
+
+    private ThumbnailPackIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 打开索引文件。文件不存在或格式不符时返回 null，由调用方重建。
+     */
+    static ThumbnailPackIndex open(Path file) throws IOException {
+        if (!Files.exists(file)) return null;
+        // 先校验文件头再映射，格式不符的文件随后由 create 删除
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+        }
+        if (header.hasRemaining()
+                || header.getInt(0) != MAGIC
+                || header.getInt(4) != VERSION) {
+            return null;
+        }
+        int capacity = header.getInt(8);
+        long length = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        if (Integer.bitCount(capacity) != 1 || Files.size(file) != length) {
+            return null;
+        }
+        ThumbnailPackIndex index = new ThumbnailPackIndex(file);
+        index.buffer = map(file, length);
+        index.capacity = capacity;
+        index.size = header.getInt(12);
+        index.used = header.getInt(16);
+        return index;
+    }
+
+    static ThumbnailPackIndex create(Path file, int expectedSize) throws IOException {
+        ThumbnailPackIndex index = new ThumbnailPackIndex(file);
+        index.capacity = capacityFor(expectedSize);
+        Files.deleteIfExists(file);
+        index.buffer = map(file, HEADER_SIZE + (long) index.capacity * RECORD_SIZE);
+        index.writeHeader();
+        return index;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Location get(String name) {
+        long fp1 = fingerprint1(name);
+        long fp2 = fingerprint2(name);
+        int mask = capacity - 1;
+        for (int slot = (int) fp1 & mask; ; slot = (slot + 1) & mask) {
+            long position = offset(slot);
+            long a = buffer.getLong((int) position);
+            long b = buffer.getLong((int) position + 8);
+            if (a == 0 && b == 0) return null;
+            if (a == fp1 && b == fp2) {
+                int pack = buffer.getInt((int) position + 24);
+                if (pack == TOMBSTONE) return null;
+                return new Location(pack, buffer.getLong((int) position + 16), buffer.getInt((int) position + 28));
+            }
+        }
+    }
+
+    /**
+     * 写入或覆盖，返回被覆盖的旧位置。
+     */
+    Location put(String name, Location location) throws IOException {
+        if (used + 1 > capacity * MAX_LOAD) {
+            // 删除标记较多时原大小重建即可
+            resize(size + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity);
+        }
+        long fp1 = fingerprint1(name);
+        long fp2 = fingerprint2(name);
+        int mask = capacity - 1;
+        int tombstone = -1;
+        for (int slot = (int) fp1 & mask; ; slot = (slot + 1) & mask) {
+            int position = (int) offset(slot);
+            long a = buffer.getLong(position);
+            long b = buffer.getLong(position + 8);
+            if (a == 0 && b == 0) {
+                if (tombstone >= 0) {
+                    write((int) offset(tombstone), fp1, fp2, location);
+                } else {
+                    write(position, fp1, fp2, location);
+                    used++;
+                }
+                size++;
+                writeHeader();
+                return null;
+            }
+            if (a == fp1 && b == fp2) {
+                int pack = buffer.getInt(position + 24);
+                Location previous = pack == TOMBSTONE ? null
+                        : new Location(pack, buffer.getLong(position + 16), buffer.getInt(position + 28));
+                write(position, fp1, fp2, location);
+                if (previous == null) {
+                    size++;
+                    writeHeader();
+                }
+                return previous;
+            }
+            if (tombstone < 0 && buffer.getInt(position + 24) == TOMBSTONE) {
+                tombstone = slot;
+            }
+        }
+    }
+
+    /**
+     * 删除并返回旧位置，不存在时返回 null。
+     */
+    Location remove(String name) {
+        long fp1 = fingerprint1(name);
+        long fp2 = fingerprint2(name);
+        int mask = capacity - 1;
+        for (int slot = (int) fp1 & mask; ; slot = (slot + 1) & mask) {
+            int position = (int) offset(slot);
+            long a = buffer.getLong(position);
+            long b = buffer.getLong(position + 8);
+            if (a == 0 && b == 0) return null;
+            if (a == fp1 && b == fp2) {
+                int pack = buffer.getInt(position + 24);
+                if (pack == TOMBSTONE) return null;
+                Location previous = new Location(pack, buffer.getLong(position + 16), buffer.getInt(position + 28));
+                buffer.putInt(position + 24, TOMBSTONE);
+                size--;
+                writeHeader();
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * 遍历所有有效记录的位置。
+     */
+    void forEachLocation(Consumer<Location> consumer) {
+        for (int slot = 0; slot < capacity; slot++) {
+            int position = (int) offset(slot);
+            if (buffer.getLong(position) == 0 && buffer.getLong(position + 8) == 0) continue;
+            int pack = buffer.getInt(position + 24);
+            if (pack == TOMBSTONE) continue;
+            consumer.accept(new Location(pack, buffer.getLong(position + 16), buffer.getInt(position + 28)));
+        }
+    }
+
+    /**
+     * 删除所有记录，保留当前容量。
+     */
+    void clear() {
+        fill(HEADER_SIZE, capacity);
+        size = 0;
+        used = 0;
+        writeHeader();
+        buffer.force();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    // 按新容量原地重建，删除标记在重建时被清除。重建期间文件头无效，中途退出时下次启动从键日志重建
+    private void resize(int newCapacity) throws IOException {
+        byte[] records = new byte[capacity * RECORD_SIZE];
+        buffer.get(HEADER_SIZE, records);
+        int previousCapacity = capacity;
+
+        buffer.putInt(0, 0);
+        buffer.force();
+        if (newCapacity != capacity) {
+            // 扩大映射时文件随之增长，旧映射由垃圾回收释放
+            buffer = map(file, HEADER_SIZE + (long) newCapacity * RECORD_SIZE);
+        }
+        capacity = newCapacity;
+        fill(HEADER_SIZE, capacity);
+
+        ByteBuffer source = ByteBuffer.wrap(records);
+        int mask = newCapacity - 1;
+        for (int slot = 0; slot < previousCapacity; slot++) {
+            int position = slot * RECORD_SIZE;
+            long a = source.getLong(position);
+            long b = source.getLong(position + 8);
+            if ((a == 0 && b == 0) || source.getInt(position + 24) == TOMBSTONE) continue;
+            int newSlot = (int) a & mask;
+            while (buffer.getLong((int) offset(newSlot)) != 0 || buffer.getLong((int) offset(newSlot) + 8) != 0) {
+                newSlot = (newSlot + 1) & mask;
+            }
+            buffer.put((int) offset(newSlot), records, position, RECORD_SIZE);
+        }
+        used = size;
+        writeHeader();
+        buffer.force();
+    }
+
+    // 清零从 position 开始的 count 条记录
+    private void fill(int position, int count) {
+        byte[] zeros = new byte[RECORD_SIZE * 1024];
+        long end = position + (long) count * RECORD_SIZE;
+        for (long p = position; p < end; p += zeros.length) {
+            buffer.put((int) p, zeros, 0, (int) Math.min(zeros.length, end - p));
+        }
+    }
+
+    private void write(int position, long fp1, long fp2, Location location) {
+        buffer.putLong(position + 16, location.offset());
+        buffer.putInt(position + 24, location.pack());
+        buffer.putInt(position + 28, location.length());
+        buffer.putLong(position + 8, fp2);
+        buffer.putLong(position, fp1);
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, size);
+        buffer.putInt(16, used);
+    }
+
+    private static long offset(int slot) {
+        return HEADER_SIZE + (long) slot * RECORD_SIZE;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 1024;
+        while (capacity * MAX_LOAD < expectedSize) capacity <<= 1;
+        return capacity;
+    }
+
+    private static MappedByteBuffer map(Path file, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("缩略图索引过大: " + length);
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    // 两个不同种子的 64 位哈希，合起来作为名称的 128 位指纹；全零表示空槽，因此第一个指纹不为零
+    private static long fingerprint1(String name) {
+        long h = hash(name, 0x9E3779B97F4A7C15L);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long fingerprint2(String name) {
+        return hash(name, 0xC2B2AE3D27D4EB4FL);
+    }
+
+    private static long hash(String name, long seed) {
+        long h = seed;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001B3L;
+            h = Long.rotateLeft(h, 29) + seed;
+        }
+        // murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    record Location(int pack, long offset, int length) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 将 temp/thumbnail 下的缩略图文件导入打包存储，导入后删除原文件。
+ * 启用打包存储后以 --migrate-thumbnails 参数启动执行，例如：
+ * java -jar bakabooru.jar --app.thumbnail.store=pack --migrate-thumbnails
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.thumbnail.store", havingValue = "pack")
+public class ThumbnailPackMigration implements ApplicationRunner {
+
+    private final AppPaths appPaths;
+    private final PackThumbnailStore packThumbnailStore;
+    private final ThumbnailCacheService thumbnailCacheService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Path dir = appPaths.getThumbnailDir();
+        if (!Files.isDirectory(dir)) return;
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(dir)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(".jpg")).toList();
+        } catch (IOException e) {
+            throw new RuntimeException("扫描缩略图目录失败.", e);
+        }
+        if (files.isEmpty()) return;
+        if (!args.containsOption("migrate-thumbnails")) {
+            log.warn("缩略图目录中有 {} 个未迁移的文件，以 --migrate-thumbnails 参数启动可导入打包存储", files.size());
+            return;
+        }
+
+        int migrated = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            try {
+                packThumbnailStore.put(name, Files.readAllBytes(file));
+                thumbnailCacheService.add(name);
+                Files.delete(file);
+                migrated++;
+            } catch (IOException e) {
+                log.warn("迁移缩略图失败: {}", file, e);
+            }
+        }
+        log.info("缩略图迁移完成，共 {} 个文件，成功 {} 个", files.size(), migrated);
+    }
+}
@@ -0,0 +1,237 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.module.system.service.SystemSettingService;
+import lombok.extern.slf4j.Slf4j;
+import net.coobird.thumbnailator.Thumbnails;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 缩略图生成：原图只解码一次（由 {@link ImageDecodeService} 按目标尺寸子采样解码），
+ * 按尺寸阶梯（file.thumbnail.sizes）从大到小依次缩放输出所有尺寸；
+ * 同一图片同时只生成一次，并发请求共享同一结果；
+ * 解码在独立的有界线程池中进行，过载时返回 503 而不是耗尽堆内存。
+ * 缩略图写入 {@link ThumbnailStore}，磁盘占用由 {@link ThumbnailCacheService} 按配额管理。
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    // 等待生成结果的最长时间
+    private static final long WAIT_SECONDS = 30;
+
+    private static final String DEFAULT_SIZES = "256,512,1024";
+
+    private final StorageService storageService;
+    private final ThumbnailStore thumbnailStore;
+    private final ThumbnailCacheService thumbnailCacheService;
+    private final ImageDecodeService imageDecodeService;
+    private final SystemSettingService systemSettingService;
+    private final ThreadPoolTaskExecutor executor;
+
+    // 正在生成的图片，键为 hash_quality
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    public ThumbnailService(StorageService storageService,
+                            ThumbnailStore thumbnailStore,
+                            ThumbnailCacheService thumbnailCacheService,
+                            ImageDecodeService imageDecodeService,
+                            SystemSettingService systemSettingService,
+                            @Qualifier("thumbnailExecutor") ThreadPoolTaskExecutor executor) {
+        this.storageService = storageService;
+        this.thumbnailStore = thumbnailStore;
+        this.thumbnailCacheService = thumbnailCacheService;
+        this.imageDecodeService = imageDecodeService;
+        this.systemSettingService = systemSettingService;
+        this.executor = executor;
+    }
+
+    public int getQuality() {
+        return systemSettingService.getIntSetting("file.thumbnail.quality", 80);
+    }
+
+    /**
+     * 尺寸阶梯，升序去重。设置无效时使用默认值。
+     */
+    public List<Integer> getSizes() {
+        TreeSet<Integer> sizes = new TreeSet<>();
+        for (String part : systemSettingService.getSetting("file.thumbnail.sizes", DEFAULT_SIZES).split(",")) {
+            try {
+                int size = Integer.parseInt(part.trim());
+                if (size > 0) sizes.add(size);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        if (sizes.isEmpty()) {
+            return getDefaultSizes();
+        }
+        return List.copyOf(sizes);
+    }
+
+    /**
+     * 选择不小于请求宽度的最小尺寸，请求宽度超过最大尺寸时返回最大尺寸。
+     * 未指定宽度时按 file.thumbnail.max-size 选择。
+     */
+    public int selectSize(Integer width) {
+        int requested = width != null && width > 0 ? width
+                : systemSettingService.getIntSetting("file.thumbnail.max-size", 800);
+        List<Integer> sizes = getSizes();
+        for (int size : sizes) {
+            if (size >= requested) return size;
+        }
+        return sizes.get(sizes.size() - 1);
+    }
+
+    /**
+     * 缩略图名称，格式为 hash_尺寸_质量.jpg。
+     */
+    public static String getThumbnailName(String hash, int quality, int size) {
+        return hash + "_" + size + "_" + quality + ".jpg";
+    }
+
+    /**
+     * 获取缩略图名称，不存在时生成该图片的所有尺寸。返回的名称用于从 {@link ThumbnailStore} 读取。
+     */
+    public String getThumbnail(String hash, int quality, int size) {
+        String name = getThumbnailName(hash, quality, size);
+        if (thumbnailCacheService.touch(name)) {
+            return name;
+        }
+        // 阶梯设置在生成期间被修改时，已在生成中的任务可能不包含该尺寸，再生成一次
+        for (int attempt = 0; attempt < 2 && thumbnailStore.size(name) < 0; attempt++) {
+            CompletableFuture<Void> future;
+            try {
+                future = submit(hash, storageService.getImagePath(hash), quality, withSize(getSizes(), size));
+            } catch (TaskRejectedException e) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "缩略图生成繁忙，请稍后重试");
+            }
+            await(future);
+        }
+        return name;
+    }
+
+    /**
+     * 按当前尺寸阶梯生成所有缺失的缩略图并等待完成，供上传流程与后台补全任务调用。
+     *
+     * @param source 原图路径（上传时为待处理文件）
+     * @throws TaskRejectedException 线程池已满
+     */
+    public void generateVariants(String hash, Path source) {
+        int quality = getQuality();
+        List<Integer> sizes = getSizes();
+        if (missingSizes(hash, quality, sizes).isEmpty()) return;
+        await(submit(hash, source, quality, sizes));
+    }
+
+    private CompletableFuture<Void> submit(String hash, Path source, int quality, List<Integer> sizes) {
+        String key = hash + "_" + quality;
+        CompletableFuture<Void> future = inFlight.computeIfAbsent(key, k -> CompletableFuture.runAsync(
+                () -> generate(source, hash, quality, sizes), executor));
+        future.whenComplete((v, e) -> inFlight.remove(key, future));
+        return future;
+    }
+
+    private void await(CompletableFuture<Void> future) {
+        try {
+            future.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "缩略图生成超时，请稍后重试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "缩略图生成被中断");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("生成缩略图失败.", e.getCause());
+        }
+    }
+
+    private void generate(Path source, String hash, int quality, List<Integer> sizes) {
+        // 排队期间可能已被其他实例生成，从大到小输出
+        List<Integer> missing = missingSizes(hash, quality, sizes);
+        if (missing.isEmpty()) return;
+        missing.sort(Comparator.reverseOrder());
+
+        try {
+            // 只解码一次原图（按最大尺寸子采样），较小的尺寸由上一级缩略图继续缩放得到
+            int largest = missing.get(0);
+            imageDecodeService.decode(source, largest, decoded -> {
+                BufferedImage current = Thumbnails.of(decoded).size(largest, largest).asBufferedImage();
+                for (int size : missing) {
+                    if (current.getWidth() > size || current.getHeight() > size) {
+                        current = Thumbnails.of(current).size(size, size).asBufferedImage();
+                    }
+                    write(current, getThumbnailName(hash, quality, size), quality);
+                }
+            });
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void write(BufferedImage image, String name, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thumbnails.of(image)
+                .scale(1.0)
+                .outputQuality(quality / 100.0)
+                .outputFormat("jpg")
+                .toOutputStream(out);
+        thumbnailStore.put(name, out.toByteArray());
+        thumbnailCacheService.add(name);
+    }
+
+    /**
+     * 定期按配额淘汰缩略图，质量或尺寸阶梯修改后遗留的缩略图优先淘汰。
+     */
+    @Scheduled(initialDelay = 1, fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void evictThumbnails() {
+        int quality = getQuality();
+        Set<Integer> sizes = new HashSet<>(getSizes());
+        thumbnailCacheService.evict(name -> !isCurrent(name, quality, sizes));
+    }
+
+    // 缩略图文件名格式为 hash_尺寸_质量.jpg
+    private static boolean isCurrent(String name, int quality, Set<Integer> sizes) {
+        if (!name.endsWith(".jpg")) return false;
+        String[] parts = name.substring(0, name.length() - 4).split("_");
+        if (parts.length < 3) return false;
+        try {
+            return Integer.parseInt(parts[parts.length - 1]) == quality
+                    && sizes.contains(Integer.parseInt(parts[parts.length - 2]));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private List<Integer> missingSizes(String hash, int quality, List<Integer> sizes) {
+        List<Integer> missing = new ArrayList<>();
+        for (int size : sizes) {
+            if (thumbnailStore.size(getThumbnailName(hash, quality, size)) < 0) {
+                missing.add(size);
+            }
+        }
+        return missing;
+    }
+
+    private static List<Integer> withSize(List<Integer> sizes, int size) {
+        if (sizes.contains(size)) return sizes;
+        List<Integer> result = new ArrayList<>(sizes);
+        result.add(size);
+        return result;
+    }
+
+    private static List<Integer> getDefaultSizes() {
+        return Arrays.stream(DEFAULT_SIZES.split(",")).map(Integer::valueOf).toList();
+    }
+}
@@ -0,0 +1,41 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 缩略图存储后端，按缩略图名称（hash_尺寸_质量.jpg）存取。
+ * 由 app.thumbnail.store 选择：file 为每个缩略图一个文件（默认），pack 为追加写入的打包文件。
+ */
+public interface ThumbnailStore {
+
+    /**
+     * 缩略图大小（字节），不存在时返回 -1。
+     */
+    long size(String name);
+
+    /**
+     * 写入缩略图，已存在时覆盖。写入完成前读取方看不到该缩略图。
+     */
+    void put(String name, byte[] data) throws IOException;
+
+    void delete(String name);
+
+    /**
+     * 将缩略图写入响应，支持 Range。调用方负责设置 Content-Type、ETag 等响应头。
+     */
+    void serve(HttpServletRequest request, HttpServletResponse response, String name, String etag) throws IOException;
+
+    /**
+     * 遍历所有缩略图的名称与大小，用于启动时重建缓存索引。
+     */
+    void forEach(ObjLongConsumer<String> consumer);
+
+    /**
+     * 删除所有缩略图。
+     */
+    void clear();
+}
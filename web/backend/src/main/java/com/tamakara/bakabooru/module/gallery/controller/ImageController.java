@@ -1,6 +1,7 @@
 package com.tamakara.bakabooru.module.gallery.controller;
 
 import com.tamakara.bakabooru.module.gallery.dto.ImageDto;
+import com.tamakara.bakabooru.module.gallery.dto.SearchSliceDto;
 import com.tamakara.bakabooru.module.gallery.service.ImageService;
 import com.tamakara.bakabooru.module.tag.dto.TagDto;
 import io.swagger.v3.oas.annotations.Operation;
@@ -28,6 +29,15 @@ public class ImageController {
         return imageService.listImages(pageable);
     }
 
+    @GetMapping("/scroll")
+    @Operation(summary = "游标获取图片列表", description = "使用游标分页获取图片列表，不统计总数")
+    public SearchSliceDto scrollImages(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "20") Integer size,
+            @RequestParam(required = false, defaultValue = "createdAt,DESC") String sort) {
+        return imageService.scrollImages(cursor, size, sort);
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "获取图片详情")
     public ImageDto getImage(@PathVariable Long id) {
@@ -2,6 +2,7 @@ package com.tamakara.bakabooru.module.gallery.controller;
 
 import com.tamakara.bakabooru.module.gallery.dto.ImageDto;
 import com.tamakara.bakabooru.module.gallery.dto.SearchRequestDto;
+import com.tamakara.bakabooru.module.gallery.dto.SearchSliceDto;
 import com.tamakara.bakabooru.module.gallery.service.QueryParseService;
 import com.tamakara.bakabooru.module.gallery.service.SearchService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -30,6 +31,12 @@ public class SearchController {
         return searchService.search(request);
     }
 
+    @PostMapping("/scroll")
+    @Operation(summary = "游标搜索图片", description = "使用游标进行分页，不统计总数，适用于无限滚动")
+    public SearchSliceDto scroll(@RequestBody SearchRequestDto request) {
+        return searchService.scroll(request);
+    }
+
     @PostMapping("/parse")
     @Operation(summary = "智能解析配置", description = "使用 LLM 解析自然语言并返回搜索配置")
     public String queryParse(@RequestBody  String query) {
@@ -16,4 +16,8 @@ public class SearchRequestDto {
     private Integer page;
     private Integer size;
     private String sort;
+    // 游标分页位置，由上一页返回的 nextCursor 提供
+    private String cursor;
+    // 是否在结果中附带估算总数
+    private Boolean estimateTotal;
 }
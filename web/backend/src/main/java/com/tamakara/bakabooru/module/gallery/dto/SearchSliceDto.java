@@ -0,0 +1,18 @@
+package com.tamakara.bakabooru.module.gallery.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SearchSliceDto {
+    private List<ImageDto> content;
+    // 偏移分页时的页码，游标分页时为空
+    private Integer page;
+    private int size;
+    private boolean hasNext;
+    // 下一页游标，最后一页时为空
+    private String nextCursor;
+    // 估算总数，仅在请求 estimateTotal 时返回
+    private Long estimatedTotal;
+}
@@ -4,6 +4,7 @@ import com.tamakara.bakabooru.module.tag.entity.Tag;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -47,6 +48,8 @@ public class Image {
     @LastModifiedDate
     private LocalDateTime updatedAt;
 
+    // 按批加载标签，一页图片的标签只需一次 IN 查询，避免逐张图片查询
+    @BatchSize(size = 100)
     @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "image_tags",
@@ -15,10 +15,9 @@ public interface ImageMapper {
     @AfterMapping
     default void setUrl(@MappingTarget ImageDto dto, Image image, @Context SignatureService signatureService) {
         if (image.getHash() != null) {
-            // 生成签名 URL
-            //TODO: 自定义过期时间
-            String signedUrl = signatureService.generateSignedUrl("/api/file/" + image.getHash(), 1000 * 60 * 60);
-            String signedThumbnailUrl = signatureService.generateSignedUrl("/api/file/thumb/" + image.getHash(), 1000 * 60 * 60);
+            // 生成签名 URL，过期时间由 file.url.expire / file.url.bucket 设置决定
+            String signedUrl = signatureService.generateSignedUrl("/api/file/" + image.getHash());
+            String signedThumbnailUrl = signatureService.generateSignedUrl("/api/file/thumb/" + image.getHash());
 
             dto.setUrl(signedUrl);
             dto.setThumbnailUrl(signedThumbnailUrl);
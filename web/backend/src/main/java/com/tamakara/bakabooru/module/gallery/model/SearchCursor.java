@@ -0,0 +1,66 @@
+package com.tamakara.bakabooru.module.gallery.model;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 游标分页位置：排序字段、方向、随机种子，以及上一页最后一条记录的排序键和 ID。
+ * 对客户端而言是不透明的 Base64 字符串。排序键为空时 value 为 null，编码为空串。
+ */
+public record SearchCursor(String property, boolean ascending, long seed, String value, long id) {
+
+    private static final String VERSION = "1";
+
+    public String encode() {
+        String raw = String.join("|", VERSION, property, ascending ? "ASC" : "DESC",
+                Long.toString(seed), value == null ? "" : value, Long.toString(id));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码并校验游标，格式或排序键不合法时返回 400。
+     */
+    public static SearchCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 6 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException("版本不匹配");
+            }
+            SearchCursor decoded = new SearchCursor(
+                    parts[1],
+                    "ASC".equals(parts[2]),
+                    Long.parseLong(parts[3]),
+                    parts[4].isEmpty() ? null : parts[4],
+                    Long.parseLong(parts[5])
+            );
+            decoded.validateValue();
+            return decoded;
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "无效的游标");
+        }
+    }
+
+    // 随机与相关度排序的值是非负偏移量，创建时间是 ISO 时间（可为空），其余字段是整数
+    private void validateValue() {
+        if (value == null && !"createdAt".equals(property)) {
+            throw new IllegalArgumentException("排序键为空");
+        }
+        switch (property) {
+            case "createdAt" -> {
+                if (value != null) LocalDateTime.parse(value);
+            }
+            case "RANDOM", "RELEVANCE" -> {
+                if (Long.parseLong(value) < 0) {
+                    throw new IllegalArgumentException("偏移量为负");
+                }
+            }
+            default -> Long.parseLong(value);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.tamakara.bakabooru.module.gallery.model;
+
+import com.tamakara.bakabooru.module.gallery.dto.SearchRequestDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * 规范化后的搜索条件（不含分页与排序）：标签集合排序去重、关键字去除首尾空白并转小写。
+ * 内容相同的查询得到相等的对象，可直接作为缓存键。
+ */
+public record SearchFilter(
+        List<String> includedTags,
+        List<String> excludedTags,
+        String keyword,
+        Integer widthMin,
+        Integer widthMax,
+        Integer heightMin,
+        Integer heightMax,
+        Long sizeMin,
+        Long sizeMax
+) {
+
+    public static SearchFilter from(SearchRequestDto request) {
+        TreeSet<String> included = new TreeSet<>();
+        TreeSet<String> excluded = new TreeSet<>();
+        String tagSearch = request.getTagSearch();
+        if (tagSearch != null && !tagSearch.isBlank()) {
+            for (String token : tagSearch.trim().split("\\s+")) {
+                if (token.startsWith("-") && token.length() > 1) {
+                    excluded.add(token.substring(1));
+                } else if (!token.isEmpty()) {
+                    included.add(token);
+                }
+            }
+        }
+
+        String keyword = request.getKeyword();
+        keyword = (keyword == null || keyword.isBlank()) ? null : keyword.trim().toLowerCase(Locale.ROOT);
+
+        return new SearchFilter(
+                List.copyOf(included),
+                List.copyOf(excluded),
+                keyword,
+                request.getWidthMin(),
+                request.getWidthMax(),
+                request.getHeightMin(),
+                request.getHeightMax(),
+                request.getSizeMin(),
+                request.getSizeMax()
+        );
+    }
+
+    // trigram 分词能匹配的最短子串
+    private static final int MIN_TRIGRAM_LENGTH = 3;
+
+    /**
+     * 关键字按非字母数字字符切分出的词，每个词都要作为子串出现在标题或文件名中。
+     * 全文检索与 LIKE 回退使用相同的切分，两种方式的匹配结果一致。
+     */
+    public List<String> keywordTokens() {
+        if (keyword == null) return List.of();
+        List<String> tokens = new ArrayList<>();
+        for (String token : keyword.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * 将关键字转换为 FTS5 MATCH 表达式：每个词做子串匹配并取交集。
+     * 关键字中没有可索引的词，或有词短于三个字符（trigram 无法匹配，常见于两个字的中文词）时返回 null，
+     * 由调用方退回 LIKE 匹配。
+     */
+    public String fullTextQuery() {
+        List<String> tokens = keywordTokens();
+        if (tokens.isEmpty()) return null;
+        StringBuilder match = new StringBuilder();
+        for (String token : tokens) {
+            if (token.codePointCount(0, token.length()) < MIN_TRIGRAM_LENGTH) return null;
+            if (!match.isEmpty()) match.append(' ');
+            match.append('"').append(token).append('"');
+        }
+        return match.toString();
+    }
+
+    public boolean hasTagFilters() {
+        return !includedTags.isEmpty() || !excludedTags.isEmpty();
+    }
+}
@@ -3,12 +3,28 @@ package com.tamakara.bakabooru.module.gallery.repository;
 import com.tamakara.bakabooru.module.gallery.entity.Image;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ImageRepository extends JpaRepository<Image, Long>, JpaSpecificationExecutor<Image> {
     Optional<Image> findByHash(String hash);
-}
 
+    // 全文检索标题与文件名，按 bm25 相关度排序 (标题权重更高)，最多返回 limit 条
+    @Query(value = "SELECT rowid FROM images_fts WHERE images_fts MATCH :query ORDER BY bm25(images_fts, 5.0, 1.0) LIMIT :limit",
+            nativeQuery = true)
+    List<Long> findIdsByFullText(@Param("query") String query, @Param("limit") int limit);
+
+    // 给定哈希中已存在的部分
+    @Query("SELECT i.hash FROM Image i WHERE i.hash IN :hashes")
+    List<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    // 所有图片哈希，新图片在前
+    @Query("SELECT i.hash FROM Image i ORDER BY i.id DESC")
+    List<String> findAllHashes();
+}
@@ -3,11 +3,14 @@ package com.tamakara.bakabooru.module.gallery.service;
 import com.tamakara.bakabooru.module.file.service.SignatureService;
 import com.tamakara.bakabooru.module.file.service.StorageService;
 import com.tamakara.bakabooru.module.gallery.dto.ImageDto;
+import com.tamakara.bakabooru.module.gallery.dto.SearchRequestDto;
+import com.tamakara.bakabooru.module.gallery.dto.SearchSliceDto;
 import com.tamakara.bakabooru.module.gallery.entity.Image;
 import com.tamakara.bakabooru.module.gallery.mapper.ImageMapper;
 import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
 import com.tamakara.bakabooru.module.tag.dto.TagDto;
 import com.tamakara.bakabooru.module.tag.entity.Tag;
+import com.tamakara.bakabooru.module.tag.service.TagIndexService;
 import com.tamakara.bakabooru.module.tag.service.TagService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -36,12 +39,23 @@ public class ImageService {
     private final StorageService storageService;
     private final TagService tagService;
     private final SignatureService signatureService;
+    private final TagIndexService tagIndexService;
+    private final SearchService searchService;
+    private final SearchCacheService searchCacheService;
 
     @Transactional(readOnly = true)
     public Page<ImageDto> listImages(Pageable pageable) {
         return imageRepository.findAll(pageable).map(image -> imageMapper.toDto(image, signatureService));
     }
 
+    public SearchSliceDto scrollImages(String cursor, Integer size, String sort) {
+        SearchRequestDto request = new SearchRequestDto();
+        request.setCursor(cursor);
+        request.setSize(size);
+        request.setSort(sort);
+        return searchService.scroll(request);
+    }
+
     @Transactional
     public ImageDto getImage(Long id) {
         Image image = imageRepository.findById(id)
@@ -61,7 +75,10 @@ public class ImageService {
         // storageService.delete(image.getPath()); // 不要删除文件，因为它可能被其他人使用（去重）
         // 或者检查是否被使用。目前，让我们保留文件。
 
+        Set<String> tagNames = image.getTags().stream().map(Tag::getName).collect(Collectors.toSet());
         imageRepository.delete(image);
+        tagIndexService.removeImage(id, tagNames);
+        searchCacheService.invalidate();
     }
 
     @Transactional
@@ -73,7 +90,9 @@ public class ImageService {
             image.setTitle(dto.getTitle());
         }
         image.setUpdatedAt(LocalDateTime.now());
-        return imageMapper.toDto(imageRepository.save(image), signatureService);
+        Image saved = imageRepository.save(image);
+        searchCacheService.invalidate();
+        return imageMapper.toDto(saved, signatureService);
     }
 
     @Transactional
@@ -82,7 +101,7 @@ public class ImageService {
                 .orElseThrow(() -> new RuntimeException("找不到图片"));
 
         // 生成标签
-        Map<String, List<String>> newTagsMap = tagService.tagImage("image/" + image.getHash());
+        Map<String, List<String>> newTagsMap = tagService.tagImage(storageService.getImageRelativePath(image.getHash()));
 
         // 处理新标签
         Set<Tag> newTags = new HashSet<>();
@@ -95,8 +114,11 @@ public class ImageService {
             }
         }
 
+        Set<String> oldTagNames = image.getTags().stream().map(Tag::getName).collect(Collectors.toSet());
         image.setTags(newTags);
         image.setUpdatedAt(LocalDateTime.now());
+        tagIndexService.replaceTags(id, oldTagNames, newTags.stream().map(Tag::getName).toList());
+        searchCacheService.invalidate();
         return imageMapper.toDto(imageRepository.save(image), signatureService);
     }
 
@@ -111,6 +133,8 @@ public class ImageService {
         }
         image.getTags().add(tag);
         image.setUpdatedAt(LocalDateTime.now());
+        tagIndexService.addTag(id, tag.getName());
+        searchCacheService.invalidate();
 
         return imageMapper.toDto(imageRepository.save(image), signatureService);
     }
@@ -120,8 +144,15 @@ public class ImageService {
         Image image = imageRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("找不到图片"));
 
-        image.getTags().removeIf(tag -> tag.getId().equals(tagId));
+        Set<String> removed = new HashSet<>();
+        image.getTags().removeIf(tag -> {
+            if (!tag.getId().equals(tagId)) return false;
+            removed.add(tag.getName());
+            return true;
+        });
         image.setUpdatedAt(LocalDateTime.now());
+        tagIndexService.removeTags(id, removed);
+        searchCacheService.invalidate();
 
         return imageMapper.toDto(imageRepository.save(image), signatureService);
     }
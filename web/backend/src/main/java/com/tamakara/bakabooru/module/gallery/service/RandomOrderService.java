@@ -0,0 +1,64 @@
+package com.tamakara.bakabooru.module.gallery.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tamakara.bakabooru.module.gallery.model.SearchFilter;
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * 随机排序引擎：对匹配的图片ID集合按种子生成一次确定性的随机排列，
+ * 按 (查询条件, 种子, 数据版本号) 缓存，后续翻页只需截取排列中的一段。
+ * 图片增删后版本号递增，旧排列不再命中，翻页中的随机结果会包含新图片。
+ */
+@Service
+@RequiredArgsConstructor
+public class RandomOrderService {
+
+    // 缓存中所有排列的 ID 总数上限（约 32MB）
+    private static final long MAX_CACHED_IDS = 8_000_000;
+
+    private final SearchCacheService searchCacheService;
+
+    private final Cache<Key, int[]> permutations = Caffeine.newBuilder()
+            .maximumWeight(MAX_CACHED_IDS)
+            .weigher((Key key, int[] ids) -> Math.max(1, ids.length))
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+
+    /**
+     * 获取查询结果的随机排列。相同的查询条件与种子总是得到相同的顺序。
+     *
+     * @param matchingIds 排列未缓存时用于计算匹配的图片ID
+     * @param cacheable   是否缓存（一次性的随机种子不必占用缓存）
+     */
+    public int[] permutation(SearchFilter filter, long seed, Supplier<RoaringBitmap> matchingIds, boolean cacheable) {
+        if (!cacheable) {
+            return shuffle(matchingIds.get(), seed);
+        }
+        // 先读取版本号：计算期间发生的修改会使结果以旧版本号缓存，不会被后续请求命中
+        long generation = searchCacheService.currentGeneration();
+        return permutations.get(new Key(filter, seed, generation), key -> shuffle(matchingIds.get(), seed));
+    }
+
+    private int[] shuffle(RoaringBitmap ids, long seed) {
+        // 位图按 ID 升序输出，保证相同种子的输入顺序一致
+        int[] result = ids.toArray();
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = result.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = result[i];
+            result[i] = result[j];
+            result[j] = tmp;
+        }
+        return result;
+    }
+
+    private record Key(SearchFilter filter, long seed, long generation) {
+    }
+}
@@ -0,0 +1,75 @@
+package com.tamakara.bakabooru.module.gallery.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tamakara.bakabooru.module.gallery.model.SearchFilter;
+import com.tamakara.bakabooru.utils.TransactionUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 搜索结果缓存：按规范化的查询条件与分页缓存每页的图片ID和总数。
+ * 图片或标签发生修改时递增数据版本号，旧版本的缓存项不会再被命中。
+ * 浏览次数的变化不会递增版本号，按浏览次数排序的结果最多延迟一个缓存周期。
+ */
+@Service
+@RequiredArgsConstructor
+public class SearchCacheService {
+
+    private final MeterRegistry meterRegistry;
+
+    // 数据版本号，作为缓存键的一部分
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Cache<Key, CachedPage> pages = Caffeine.newBuilder()
+            .maximumSize(5000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .recordStats()
+            .build();
+
+    @PostConstruct
+    public void bindMetrics() {
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "search.results");
+    }
+
+    /**
+     * 查询前读取当前版本号：查询期间发生的修改会使结果以旧版本号写入，不会被后续请求命中。
+     */
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    public CachedPage get(Key key) {
+        return pages.getIfPresent(key);
+    }
+
+    public void put(Key key, CachedPage page) {
+        pages.put(key, page);
+    }
+
+    /**
+     * 图片或标签修改后调用，在事务提交后生效，避免提交前的查询以新版本号缓存旧数据。
+     */
+    public void invalidate() {
+        TransactionUtils.afterCommit(() -> {
+            generation.incrementAndGet();
+            pages.invalidateAll();
+        });
+    }
+
+    /**
+     * 缓存键。sort 为解析后的排序（字段,方向），seed 仅在带种子的随机排序时非零。
+     */
+    public record Key(SearchFilter filter, String sort, long seed, int page, int size, long generation) {
+    }
+
+    public record CachedPage(List<Long> ids, long total) {
+    }
+}
@@ -3,24 +3,42 @@ package com.tamakara.bakabooru.module.gallery.service;
 import com.tamakara.bakabooru.module.file.service.SignatureService;
 import com.tamakara.bakabooru.module.gallery.dto.ImageDto;
 import com.tamakara.bakabooru.module.gallery.dto.SearchRequestDto;
+import com.tamakara.bakabooru.module.gallery.dto.SearchSliceDto;
 import com.tamakara.bakabooru.module.gallery.entity.Image;
 import com.tamakara.bakabooru.module.gallery.mapper.ImageMapper;
+import com.tamakara.bakabooru.module.gallery.model.SearchCursor;
+import com.tamakara.bakabooru.module.gallery.model.SearchFilter;
 import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
 import com.tamakara.bakabooru.module.tag.entity.Tag;
+import com.tamakara.bakabooru.module.tag.service.TagIndexService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.criteria.*;
 import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 @RequiredArgsConstructor
@@ -29,114 +47,478 @@ public class SearchService {
     private final ImageRepository imageRepository;
     private final ImageMapper imageMapper;
     private final SignatureService signatureService;
+    private final TagIndexService tagIndexService;
+    private final RandomOrderService randomOrderService;
+    private final SearchCacheService searchCacheService;
+    private final EntityManager entityManager;
+
+    // 单次查询允许绑定的最大 ID 参数个数，超过后退回子查询
+    private static final int MAX_ID_PARAMETERS = 10000;
+
+    // 全文检索最多加载的命中数，超过后关键字退回 LIKE 匹配，相关度排序退回默认排序
+    private static final int MAX_FULL_TEXT_HITS = 50000;
+
+    // 支持游标分页的排序字段
+    private static final Set<String> CURSOR_PROPERTIES = Set.of("createdAt", "size", "width", "height", "viewCount", "id", "RANDOM", "RELEVANCE");
+
+    // 按规范化查询条件与缓存代数缓存的结果总数，用于估算总数；数据变化后代数递增，旧的总数不再命中
+    private final Cache<TotalKey, Long> totalCache = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build();
 
     @Transactional(readOnly = true)
     public Page<ImageDto> search(SearchRequestDto request) {
         int page = (request.getPage() != null && request.getPage() >= 0) ? request.getPage() : 0;
         int size = (request.getSize() != null && request.getSize() > 0) ? request.getSize() : 20;
 
+        SearchFilter filter = SearchFilter.from(request);
+        Sort sort = parseSort(request.getSort(), filter.fullTextQuery() != null);
+        Sort.Order order = sort.iterator().next();
+        boolean isRandomSort = "RANDOM".equals(order.getProperty());
+        boolean isRelevanceSort = "RELEVANCE".equals(order.getProperty());
+        Pageable effectivePageable = isRandomSort || isRelevanceSort
+                ? PageRequest.of(page, size)
+                : PageRequest.of(page, size, sort);
+
+        // 未提供种子的随机排序每次结果不同，不参与缓存
+        boolean seeded = hasText(request.getRandomSeed());
+        if (isRandomSort && !seeded) {
+            return searchPage(filter, effectivePageable, isRandomSort, isRelevanceSort,
+                    ThreadLocalRandom.current().nextLong(), false);
+        }
+
+        long seed = isRandomSort ? seedOf(request.getRandomSeed()) : 0;
+        SearchCacheService.Key key = new SearchCacheService.Key(filter,
+                order.getProperty() + "," + order.getDirection(), seed, page, size,
+                searchCacheService.currentGeneration());
+        SearchCacheService.CachedPage cached = searchCacheService.get(key);
+        if (cached != null) {
+            return new PageImpl<>(hydrate(cached.ids()), effectivePageable, cached.total());
+        }
+
+        Page<ImageDto> result = searchPage(filter, effectivePageable, isRandomSort, isRelevanceSort, seed, true);
+        searchCacheService.put(key, new SearchCacheService.CachedPage(
+                result.getContent().stream().map(ImageDto::getId).toList(), result.getTotalElements()));
+        return result;
+    }
+
+    private Page<ImageDto> searchPage(SearchFilter filter, Pageable effectivePageable,
+                                      boolean isRandomSort, boolean isRelevanceSort, long seed, boolean seeded) {
+        int size = effectivePageable.getPageSize();
+        IdFilter idFilter = resolveCandidates(filter);
+        if (idFilter.matchesNothing()) {
+            return Page.empty(effectivePageable);
+        }
+
+        Specification<Image> spec = filterSpec(filter, idFilter);
+
+        // 相关度排序：按全文检索的 bm25 顺序分页，只加载当前页
+        if (isRelevanceSort && idFilter.isRanked()) {
+            List<Long> ranked = rankedMatches(filter, idFilter, spec);
+            int from = (int) Math.min(effectivePageable.getOffset(), ranked.size());
+            int to = Math.min(from + size, ranked.size());
+            return new PageImpl<>(hydrate(ranked.subList(from, to)), effectivePageable, ranked.size());
+        }
+        // 命中过多时不按相关度排序，退回默认的创建时间倒序
+        Pageable pageable = isRelevanceSort
+                ? PageRequest.of(effectivePageable.getPageNumber(), size, Sort.by(Sort.Direction.DESC, "createdAt"))
+                : effectivePageable;
+
+        // 随机排序：截取按种子缓存的随机排列，未提供种子时每次请求重新打乱
+        if (isRandomSort) {
+            int[] permutation = randomOrderService.permutation(filter, seed,
+                    () -> matchingIds(filter, idFilter, spec), seeded);
+            return new PageImpl<>(hydrate(slice(permutation, pageable.getOffset(), size)),
+                    pageable, permutation.length);
+        }
+
+        // 条件全部由索引解析时总数即位图基数，无需额外的 COUNT 查询
+        if (idFilter.candidates() != null && !hasDatabaseFilters(filter, idFilter)) {
+            Sort pageSort = pageable.getSort();
+            Slice<Image> slice = imageRepository.findBy(spec, q -> q.sortBy(pageSort).slice(pageable));
+            return new PageImpl<>(slice.getContent(), pageable, idFilter.candidates().getLongCardinality())
+                    .map(image -> imageMapper.toDto(image, signatureService));
+        }
+
+        return imageRepository.findAll(spec, pageable).map(image -> imageMapper.toDto(image, signatureService));
+    }
+
+    /**
+     * 游标（键集）分页：按 (排序键, id) 定位上一页末尾，不做 OFFSET 扫描也不做 COUNT。
+     * 请求未携带游标时按 page 偏移取一页（多取一条判断 hasNext），后续页的排序方式以游标中记录的为准。
+     */
+    @Transactional(readOnly = true)
+    public SearchSliceDto scroll(SearchRequestDto request) {
+        int page = (request.getPage() != null && request.getPage() >= 0) ? request.getPage() : 0;
+        int size = (request.getSize() != null && request.getSize() > 0) ? request.getSize() : 20;
+
+        SearchFilter filter = SearchFilter.from(request);
+        IdFilter idFilter = resolveCandidates(filter);
+
+        SearchCursor cursor = hasText(request.getCursor()) ? SearchCursor.decode(request.getCursor()) : null;
+        Sort.Order order = parseSort(request.getSort(), idFilter.isRanked()).iterator().next();
+        boolean isRandomSort = cursor == null && "RANDOM".equals(order.getProperty());
+        String property = cursor != null ? cursor.property() : order.getProperty();
+        boolean ascending = cursor != null ? cursor.ascending() : order.isAscending();
+        long seed;
+        if (cursor != null) {
+            seed = cursor.seed();
+        } else if (isRandomSort) {
+            // 随机排序统一使用带种子的排列，未提供种子时生成一个并记录在游标中
+            seed = hasText(request.getRandomSeed())
+                    ? seedOf(request.getRandomSeed())
+                    : ThreadLocalRandom.current().nextLong();
+        } else {
+            seed = 0;
+        }
+        if (!CURSOR_PROPERTIES.contains(property)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "不支持游标分页的排序字段: " + property);
+        }
+        if ("RELEVANCE".equals(property) && !idFilter.isRanked() && !idFilter.matchesNothing()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "相关度排序需要提供关键字");
+        }
+
+        SearchSliceDto result = new SearchSliceDto();
+        result.setPage(cursor == null ? page : null);
+        result.setSize(size);
+
+        if (idFilter.matchesNothing()) {
+            result.setContent(List.of());
+            if (Boolean.TRUE.equals(request.getEstimateTotal())) {
+                result.setEstimatedTotal(0L);
+            }
+            return result;
+        }
+
+        Specification<Image> filterSpec = filterSpec(filter, idFilter);
+
+        // 随机排序的游标记录的是在随机排列中的偏移量
+        if ("RANDOM".equals(property)) {
+            int[] permutation = randomOrderService.permutation(filter, seed,
+                    () -> matchingIds(filter, idFilter, filterSpec), true);
+            long from = Math.min(cursor != null ? Long.parseLong(cursor.value()) : (long) page * size, permutation.length);
+            long to = Math.min(from + size, permutation.length);
+            boolean hasNext = to < permutation.length;
+            result.setContent(hydrate(slice(permutation, from, size)));
+            result.setHasNext(hasNext);
+            if (hasNext) {
+                result.setNextCursor(new SearchCursor(property, true, seed, Long.toString(to), 0).encode());
+            }
+            if (Boolean.TRUE.equals(request.getEstimateTotal())) {
+                result.setEstimatedTotal((long) permutation.length);
+            }
+            return result;
+        }
+
+        // 相关度排序的游标记录的是在排名列表中的偏移量
+        if ("RELEVANCE".equals(property)) {
+            List<Long> ranked = rankedMatches(filter, idFilter, filterSpec);
+            int from = (int) Math.min(cursor != null ? Long.parseLong(cursor.value()) : (long) page * size, ranked.size());
+            int to = Math.min(from + size, ranked.size());
+            boolean hasNext = to < ranked.size();
+            result.setContent(hydrate(ranked.subList(from, to)));
+            result.setHasNext(hasNext);
+            if (hasNext) {
+                result.setNextCursor(new SearchCursor(property, true, 0, Integer.toString(to), 0).encode());
+            }
+            if (Boolean.TRUE.equals(request.getEstimateTotal())) {
+                result.setEstimatedTotal((long) ranked.size());
+            }
+            return result;
+        }
+
+        Specification<Image> spec = filterSpec.and((root, query, cb) -> {
+            Path<Long> id = root.get("id");
+            if (query != null && "id".equals(property)) {
+                query.orderBy(ascending ? cb.asc(id) : cb.desc(id));
+            } else if (query != null) {
+                Expression<?> key = sortKey(root, cb, property);
+                query.orderBy(
+                        ascending ? cb.asc(key) : cb.desc(key),
+                        ascending ? cb.asc(id) : cb.desc(id)
+                );
+            }
+            return cursor == null ? null : keysetPredicate(root, cb, cursor);
+        });
+
+        // 排序已由 Specification 设置，这里只取 size + 1 条而不统计总数
+        Pageable pageable = PageRequest.of(cursor == null ? page : 0, size);
+        Slice<Image> slice = imageRepository.findBy(spec, q -> q.slice(pageable));
+        List<Image> images = slice.getContent();
+        if (slice.hasNext()) {
+            Image last = images.get(images.size() - 1);
+            result.setNextCursor(new SearchCursor(property, ascending, seed, sortValue(last, property), last.getId()).encode());
+        }
+        result.setHasNext(slice.hasNext());
+        result.setContent(images.stream().map(image -> imageMapper.toDto(image, signatureService)).toList());
+
+        if (Boolean.TRUE.equals(request.getEstimateTotal())) {
+            result.setEstimatedTotal(estimateTotal(filter, idFilter, filterSpec));
+        }
+        return result;
+    }
+
+    /**
+     * 估算结果总数：条件全部由索引解析时直接取位图基数；
+     * 否则按规范化查询条件缓存一次 COUNT 的结果，短时间内重复查询不再计数。
+     */
+    private long estimateTotal(SearchFilter filter, IdFilter idFilter, Specification<Image> filterSpec) {
+        if (!hasDatabaseFilters(filter, idFilter)) {
+            return idFilter.candidates() != null
+                    ? idFilter.candidates().getLongCardinality()
+                    : tagIndexService.getImageCount();
+        }
+        return totalCache.get(new TotalKey(filter, searchCacheService.currentGeneration()),
+                key -> imageRepository.count(filterSpec));
+    }
+
+    /**
+     * 按相关度排列的最终结果 ID：全文检索排名过滤掉不满足标签及其他条件的图片。
+     */
+    private List<Long> rankedMatches(SearchFilter filter, IdFilter idFilter, Specification<Image> filterSpec) {
+        RoaringBitmap matched = matchingIds(filter, idFilter, filterSpec);
+        return idFilter.rankedIds().stream()
+                .filter(id -> matched.contains(id.intValue()))
+                .toList();
+    }
+
+    // 满足全部条件的图片 ID，只有数据库才能判断的条件通过一次仅查询 ID 的语句解析
+    private RoaringBitmap matchingIds(SearchFilter filter, IdFilter idFilter, Specification<Image> filterSpec) {
+        if (hasDatabaseFilters(filter, idFilter)) {
+            RoaringBitmap ids = toBitmap(findIds(filterSpec));
+            return idFilter.candidates() != null ? RoaringBitmap.and(idFilter.candidates(), ids) : ids;
+        }
+        return idFilter.candidates() != null
+                ? idFilter.candidates()
+                : tagIndexService.complement(new RoaringBitmap());
+    }
+
+    private List<Long> slice(int[] permutation, long offset, int size) {
+        int from = (int) Math.min(offset, permutation.length);
+        int to = Math.min(from + size, permutation.length);
+        List<Long> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add((long) permutation[i]);
+        }
+        return ids;
+    }
+
+    private List<Long> findIds(Specification<Image> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Image> root = query.from(Image.class);
+        query.select(root.get("id"));
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    // 按给定 ID 顺序加载图片
+    private List<ImageDto> hydrate(List<Long> ids) {
+        Map<Long, Image> images = imageRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Image::getId, Function.identity()));
+        return ids.stream()
+                .map(images::get)
+                .filter(image -> image != null)
+                .map(image -> imageMapper.toDto(image, signatureService))
+                .toList();
+    }
+
+    private Sort parseSort(String sortParam, boolean ranked) {
         Sort sort = Sort.by(Sort.Direction.DESC, "createdAt");
-        if (hasText(request.getSort())) {
-            String[] parts = request.getSort().split(",");
+        if (hasText(sortParam)) {
+            String[] parts = sortParam.split(",");
             if (parts.length > 0) {
                 String property = parts[0].trim();
                 Sort.Direction direction = Sort.Direction.DESC;
                 if (parts.length > 1 && "ASC".equalsIgnoreCase(parts[1].trim())) {
                     direction = Sort.Direction.ASC;
                 }
-                if (!property.isEmpty()) {
+                // 没有全文检索关键字时相关度排序退回默认排序
+                if (!property.isEmpty() && (ranked || !"RELEVANCE".equals(property))) {
                     sort = Sort.by(direction, property);
                 }
             }
         }
+        return sort;
+    }
 
-        boolean isRandomSort = sort.stream().anyMatch(o -> "RANDOM".equals(o.getProperty()));
-        Pageable effectivePageable = isRandomSort
-                ? PageRequest.of(page, size)
-                : PageRequest.of(page, size, sort);
-
-        Specification<Image> spec = (root, query, cb) -> {
-            List<Predicate> predicates = new ArrayList<>();
+    private IdFilter resolveCandidates(SearchFilter filter) {
+        // 通过内存位图索引解析标签条件
+        RoaringBitmap candidates = tagIndexService.resolve(filter.includedTags(), filter.excludedTags());
 
-            Set<String> includedTags = new HashSet<>();
-            Set<String> excludedTags = new HashSet<>();
-            parseTagSearch(request.getTagSearch(), includedTags, excludedTags);
+        // 关键字通过全文索引解析，与标签结果取交集
+        List<Long> rankedIds = null;
+        String fullTextQuery = filter.fullTextQuery();
+        if (fullTextQuery != null && (candidates == null || !candidates.isEmpty())) {
+            rankedIds = imageRepository.findIdsByFullText(fullTextQuery, MAX_FULL_TEXT_HITS + 1);
+            if (rankedIds.size() > MAX_FULL_TEXT_HITS) {
+                // 命中过多的宽泛关键字不加载全部 ID
+                rankedIds = null;
+                fullTextQuery = null;
+            } else {
+                RoaringBitmap hits = toBitmap(rankedIds);
+                candidates = candidates == null ? hits : RoaringBitmap.and(candidates, hits);
+            }
+        }
 
-            // 包含的标签 (AND)
-            for (String tag : includedTags) {
-                predicates.add(createTagExistsPredicate(cb, query, root, tag));
+        List<Long> includedIds = null;
+        List<Long> excludedIds = null;
+        if (candidates != null && !candidates.isEmpty()) {
+            if (candidates.getCardinality() <= MAX_ID_PARAMETERS) {
+                includedIds = toIdList(candidates);
+            } else {
+                RoaringBitmap rejected = tagIndexService.complement(candidates);
+                if (rejected.getCardinality() <= MAX_ID_PARAMETERS) {
+                    excludedIds = toIdList(rejected);
+                }
             }
+        }
+        return new IdFilter(candidates, includedIds, excludedIds, rankedIds, fullTextQuery != null);
+    }
+
+    private Specification<Image> filterSpec(SearchFilter filter, IdFilter idFilter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
 
-            // 排除的标签 (NOT)
-            if (!excludedTags.isEmpty()) {
-                predicates.add(cb.not(createTagInPredicate(cb, query, root, excludedTags)));
+            if (idFilter.includedIds() != null) {
+                predicates.add(root.get("id").in(idFilter.includedIds()));
+            } else if (idFilter.excludedIds() != null) {
+                predicates.add(cb.not(root.get("id").in(idFilter.excludedIds())));
+            } else if (idFilter.candidates() != null) {
+                // 命中集合与补集都过大时退回子查询，关键字退回 LIKE 匹配
+                // 包含的标签 (AND)
+                for (String tag : filter.includedTags()) {
+                    predicates.add(createTagExistsPredicate(cb, query, root, tag));
+                }
+
+                // 排除的标签 (NOT)
+                if (!filter.excludedTags().isEmpty()) {
+                    predicates.add(cb.not(createTagInPredicate(cb, query, root, filter.excludedTags())));
+                }
             }
 
-            // 关键字搜索 (Title or FileName)
-            if (hasText(request.getKeyword())) {
-                String likePattern = "%" + request.getKeyword().trim().toLowerCase() + "%";
-                predicates.add(cb.or(
-                        cb.like(cb.lower(root.get("title")), likePattern),
-                        cb.like(cb.lower(root.get("fileName")), likePattern)
-                ));
+            // 关键字搜索 (Title or FileName)，无法使用全文索引时的回退；与全文检索相同，每个词都需匹配
+            if (idFilter.likeKeyword() && filter.keyword() != null) {
+                List<String> tokens = filter.keywordTokens();
+                for (String token : tokens.isEmpty() ? List.of(filter.keyword()) : tokens) {
+                    String likePattern = "%" + token + "%";
+                    predicates.add(cb.or(
+                            cb.like(cb.lower(root.get("title")), likePattern),
+                            cb.like(cb.lower(root.get("fileName")), likePattern)
+                    ));
+                }
             }
 
             // 尺寸限制
-            if (request.getWidthMin() != null) {
-                predicates.add(cb.ge(root.get("width"), request.getWidthMin()));
+            if (filter.widthMin() != null) {
+                predicates.add(cb.ge(root.get("width"), filter.widthMin()));
             }
-            if (request.getWidthMax() != null) {
-                predicates.add(cb.le(root.get("width"), request.getWidthMax()));
+            if (filter.widthMax() != null) {
+                predicates.add(cb.le(root.get("width"), filter.widthMax()));
             }
 
-            if (request.getHeightMin() != null) {
-                predicates.add(cb.ge(root.get("height"), request.getHeightMin()));
+            if (filter.heightMin() != null) {
+                predicates.add(cb.ge(root.get("height"), filter.heightMin()));
             }
-            if (request.getHeightMax() != null) {
-                predicates.add(cb.le(root.get("height"), request.getHeightMax()));
+            if (filter.heightMax() != null) {
+                predicates.add(cb.le(root.get("height"), filter.heightMax()));
             }
 
-            if (request.getSizeMin() != null) {
-                predicates.add(cb.ge(root.get("size"), request.getSizeMin()));
+            if (filter.sizeMin() != null) {
+                predicates.add(cb.ge(root.get("size"), filter.sizeMin()));
             }
-            if (request.getSizeMax() != null) {
-                predicates.add(cb.le(root.get("size"), request.getSizeMax()));
-            }
-
-            // 随机排序
-            if (isRandomSort && query != null && Long.class != query.getResultType()) {
-                if (hasText(request.getRandomSeed())) {
-                    // 使用确定性算法实现一致性随机: (id * seed) % MAX_INT
-                    long seedVal = request.getRandomSeed().hashCode();
-                    // 保证 seed 不为 0 且为正数，提升混淆效果
-                    long effectiveSeed = Math.abs(seedVal == 0 ? 0xADEAD1D5L : seedVal);
-                    // 简单的乘法哈希排序
-                    query.orderBy(cb.asc(
-                            cb.function("MOD", Integer.class,
-                                    cb.prod(root.get("id"), effectiveSeed),
-                                    cb.literal(Integer.MAX_VALUE)
-                            )
-                    ));
-                } else {
-                    query.orderBy(cb.asc(cb.function("RANDOM", Double.class)));
-                }
+            if (filter.sizeMax() != null) {
+                predicates.add(cb.le(root.get("size"), filter.sizeMax()));
             }
 
             return cb.and(predicates.toArray(new Predicate[0]));
         };
+    }
 
-        return imageRepository.findAll(spec, effectivePageable).map(image -> imageMapper.toDto(image, signatureService));
+    private Expression<?> sortKey(Root<Image> root, CriteriaBuilder cb, String property) {
+        return switch (property) {
+            case "createdAt" -> root.<LocalDateTime>get("createdAt");
+            case "id" -> root.<Long>get("id");
+            // 空值按 0 参与排序，保证游标比较稳定；字面量内联到 SQL，与 V13 的表达式索引一致
+            default -> cb.coalesce(root.get(property).as(Long.class), cb.literal(0L));
+        };
     }
 
-    private void parseTagSearch(String search, Set<String> included, Set<String> excluded) {
-        if (!hasText(search)) return;
-        for (String token : search.trim().split("\\s+")) {
-            if (token.startsWith("-") && token.length() > 1) {
-                excluded.add(token.substring(1));
-            } else if (!token.isEmpty()) {
-                included.add(token);
+    @SuppressWarnings("unchecked")
+    private Predicate keysetPredicate(Root<Image> root, CriteriaBuilder cb, SearchCursor cursor) {
+        Path<Long> id = root.get("id");
+        if ("id".equals(cursor.property())) {
+            return cursor.ascending() ? cb.gt(id, cursor.id()) : cb.lt(id, cursor.id());
+        }
+        Expression<?> key = sortKey(root, cb, cursor.property());
+        if ("createdAt".equals(cursor.property())) {
+            if (cursor.value() == null) {
+                // SQLite 中空值排在最前（降序时最后），V13 已补齐空值，这里只保证游标可用
+                Path<LocalDateTime> createdAt = root.get("createdAt");
+                return cursor.ascending()
+                        ? cb.or(cb.isNotNull(createdAt), cb.gt(id, cursor.id()))
+                        : cb.and(cb.isNull(createdAt), cb.lt(id, cursor.id()));
             }
+            return after(cb, (Expression<LocalDateTime>) key, LocalDateTime.parse(cursor.value()), id, cursor);
         }
+        return after(cb, (Expression<Long>) key, Long.parseLong(cursor.value()), id, cursor);
+    }
+
+    // (key, id) 严格位于游标之后，写成 key >= v AND (key > v OR id > c) 使 (key, id) 索引可以直接定位到游标处
+    private <T extends Comparable<? super T>> Predicate after(CriteriaBuilder cb, Expression<T> key, T value,
+                                                              Path<Long> id, SearchCursor cursor) {
+        if (cursor.ascending()) {
+            return cb.and(
+                    cb.greaterThanOrEqualTo(key, value),
+                    cb.or(cb.greaterThan(key, value), cb.gt(id, cursor.id()))
+            );
+        }
+        return cb.and(
+                cb.lessThanOrEqualTo(key, value),
+                cb.or(cb.lessThan(key, value), cb.lt(id, cursor.id()))
+        );
+    }
+
+    private String sortValue(Image image, String property) {
+        return switch (property) {
+            case "createdAt" -> image.getCreatedAt() == null ? null : image.getCreatedAt().toString();
+            case "id" -> Long.toString(image.getId());
+            case "size" -> Long.toString(image.getSize() == null ? 0 : image.getSize());
+            case "width" -> Long.toString(image.getWidth() == null ? 0 : image.getWidth());
+            case "height" -> Long.toString(image.getHeight() == null ? 0 : image.getHeight());
+            case "viewCount" -> Long.toString(image.getViewCount() == null ? 0 : image.getViewCount());
+            default -> throw new IllegalStateException("未知排序字段: " + property);
+        };
+    }
+
+    private long seedOf(String randomSeed) {
+        long seedVal = randomSeed.hashCode();
+        // 保证 seed 不为 0 且为正数，提升混淆效果
+        return Math.abs(seedVal == 0 ? 0xADEAD1D5L : seedVal);
+    }
+
+    // 是否存在只能由数据库判断的条件
+    private boolean hasDatabaseFilters(SearchFilter filter, IdFilter idFilter) {
+        return (filter.keyword() != null && idFilter.likeKeyword())
+                || filter.widthMin() != null || filter.widthMax() != null
+                || filter.heightMin() != null || filter.heightMax() != null
+                || filter.sizeMin() != null || filter.sizeMax() != null;
+    }
+
+    private RoaringBitmap toBitmap(List<Long> ids) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        ids.forEach(id -> bitmap.add(id.intValue()));
+        return bitmap;
+    }
+
+    private List<Long> toIdList(RoaringBitmap bitmap) {
+        List<Long> ids = new ArrayList<>(bitmap.getCardinality());
+        bitmap.forEach((int id) -> ids.add((long) id));
+        return ids;
     }
 
     private Predicate createTagExistsPredicate(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Image> root, String tag) {
@@ -151,7 +533,7 @@ public class SearchService {
         return cb.exists(subquery);
     }
 
-    private Predicate createTagInPredicate(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Image> root, Set<String> tags) {
+    private Predicate createTagInPredicate(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Image> root, Collection<String> tags) {
         Subquery<Long> subquery = query.subquery(Long.class);
         Root<Image> subRoot = subquery.from(Image.class);
         Join<Image, Tag> subTags = subRoot.join("tags");
@@ -166,4 +548,29 @@ public class SearchService {
     private boolean hasText(String str) {
         return str != null && !str.trim().isEmpty();
     }
+
+    private record TotalKey(SearchFilter filter, long generation) {
+    }
+
+    /**
+     * 索引（标签位图与全文索引）解析结果。candidates 为 null 表示没有可由索引解析的条件；
+     * includedIds / excludedIds 为下推到 SQL 的 ID 列表，二者都为 null 时使用子查询；
+     * rankedIds 为全文检索按相关度排列的命中 ID。
+     */
+    private record IdFilter(RoaringBitmap candidates, List<Long> includedIds, List<Long> excludedIds,
+                            List<Long> rankedIds, boolean keywordIndexed) {
+
+        boolean matchesNothing() {
+            return candidates != null && candidates.isEmpty();
+        }
+
+        boolean isRanked() {
+            return rankedIds != null;
+        }
+
+        // 关键字需要在 SQL 中以 LIKE 匹配：未使用全文索引，或命中集合无法下推为 ID 列表
+        boolean likeKeyword() {
+            return !keywordIndexed || (candidates != null && includedIds == null && excludedIds == null);
+        }
+    }
 }
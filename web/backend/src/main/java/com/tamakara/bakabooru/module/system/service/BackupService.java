@@ -2,9 +2,13 @@ package com.tamakara.bakabooru.module.system.service;
 
 import com.tamakara.bakabooru.module.file.service.StorageService;
 import com.tamakara.bakabooru.module.gallery.entity.Image;
+import com.tamakara.bakabooru.module.gallery.service.SearchCacheService;
 import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
 import com.tamakara.bakabooru.module.tag.entity.Tag;
 import com.tamakara.bakabooru.module.tag.repository.TagRepository;
+import com.tamakara.bakabooru.module.tag.service.TagAutocompleteService;
+import com.tamakara.bakabooru.module.tag.service.TagIndexService;
+import com.tamakara.bakabooru.module.tag.service.TagService;
 import com.tamakara.bakabooru.config.AppPaths;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -37,6 +41,10 @@ public class BackupService {
     private final SystemSettingService systemSettingService;
     private final StorageService storageService;
     private final AppPaths appPaths;
+    private final TagIndexService tagIndexService;
+    private final TagService tagService;
+    private final TagAutocompleteService tagAutocompleteService;
+    private final SearchCacheService searchCacheService;
 
     public File createBackup() throws IOException {
 
@@ -52,7 +60,7 @@ public class BackupService {
                 addToZip(dbFile, "db/" + dbFile.getName(), zos);
             }
 
-            // 备份图片
+            // 备份图片（保留目录结构，分片与旧的平铺布局均可恢复）
             File images = appPaths.getImageDir().toFile();
             if (images.exists() && images.isDirectory()) {
                 addDirectoryToZip(images, "images", zos);
@@ -66,6 +74,9 @@ public class BackupService {
     public void resetSystem() throws IOException {
         imageRepository.deleteAll();
         tagRepository.deleteAll();
+        tagIndexService.clear();
+        tagAutocompleteService.clear();
+        searchCacheService.invalidate();
         storageService.clearCache();
         systemSettingService.resetSettings();
 
@@ -118,6 +129,7 @@ public class BackupService {
 
                 // 2. 恢复图片
                 restoreImages(conn, tempExtractDir.toFile());
+                searchCacheService.invalidate();
             } catch (SQLException e) {
                 log.error("Failed to read restored database", e);
                 throw new IOException("Failed to read restored database", e);
@@ -169,10 +181,16 @@ public class BackupService {
                 image.setTags(tags);
 
                 imageRepository.save(image);
+                tagIndexService.addImage(image.getId(), tags.stream().map(Tag::getName).toList());
 
+                // 备份中的原图可能是分片布局 images/ab/cd/hash，也可能是旧的平铺布局 images/hash
                 File sourceFile = new File(tempDir, "images/" + hash);
+                if (hash.length() >= 4) {
+                    File sharded = new File(tempDir, "images/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash);
+                    if (sharded.exists()) sourceFile = sharded;
+                }
                 if (sourceFile.exists()) {
-                    File destFile = appPaths.getImageDir().resolve(hash).toFile();
+                    File destFile = storageService.getShardedImagePath(hash).toFile();
                     FileUtils.copyFile(sourceFile, destFile);
                 }
             }
@@ -187,14 +205,7 @@ public class BackupService {
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
                     String tagName = rs.getString("name");
-                    Tag tag = tagRepository.findByName(tagName)
-                            .orElseGet(() -> {
-                                Tag newTag = new Tag();
-                                newTag.setName(tagName);
-                                newTag.setType("通用");
-                                return tagRepository.save(newTag);
-                            });
-                    tags.add(tag);
+                    tags.add(tagService.findOrCreateTag(tagName, "通用"));
                 }
             }
         }
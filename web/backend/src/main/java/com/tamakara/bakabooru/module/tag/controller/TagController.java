@@ -17,11 +17,15 @@ public class TagController {
 
     private final TagService tagService;
 
+    // 补全建议的最大条数
+    private static final int MAX_SUGGESTIONS = 100;
+
     @GetMapping
-    @Operation(summary = "获取标签列表", description = "获取所有标签或按查询搜索")
-    public List<TagDto> listTags(@RequestParam(required = false) String query) {
+    @Operation(summary = "获取标签列表", description = "获取所有标签，或按查询返回前 limit 个补全建议")
+    public List<TagDto> listTags(@RequestParam(required = false) String query,
+                                 @RequestParam(defaultValue = "20") int limit) {
         if (query != null && !query.isEmpty()) {
-            return tagService.searchTags(query);
+            return tagService.searchTags(query, Math.clamp(limit, 1, MAX_SUGGESTIONS));
         }
         return tagService.listTags();
     }
@@ -4,7 +4,6 @@ import com.tamakara.bakabooru.module.tag.entity.Tag;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,7 +11,5 @@ public interface TagRepository extends JpaRepository<Tag, Long> {
 
     Optional<Tag> findByName(String name);
 
-    List<Tag> findByNameContainingIgnoreCase(String name);
-
     boolean existsByName(String name);
 }
@@ -0,0 +1,231 @@
+package com.tamakara.bakabooru.module.tag.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tamakara.bakabooru.module.tag.entity.Tag;
+import com.tamakara.bakabooru.utils.TransactionUtils;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 标签自动补全的内存索引：有序表做前缀匹配，2/3-gram 倒排位图做中缀匹配。
+ * 结果依次按 完全匹配 > 前缀匹配 > 中缀匹配 排列，同一档内按使用该标签的图片数量降序。
+ * 新建标签在事务提交后增量加入索引。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TagAutocompleteService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TagIndexService tagIndexService;
+
+    // 小写标签名 + '\0' + 标签ID -> 标签，按字典序排列
+    private final ConcurrentSkipListMap<String, Tag> prefixIndex = new ConcurrentSkipListMap<>();
+
+    // 标签ID -> 标签
+    private final Map<Integer, Tag> tagsById = new ConcurrentHashMap<>();
+
+    // n-gram -> 包含该片段的标签ID
+    private final Map<String, RoaringBitmap> gramIndex = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 一两个字符的前缀匹配数量多，缓存其结果（图片数量的变化最多延迟一分钟）
+    private static final int SHORT_QUERY_LENGTH = 2;
+    private final Cache<String, List<Tag>> shortQueryCache = Caffeine.newBuilder()
+            .maximumSize(5000)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
+
+    private static final Comparator<Candidate> RANKING = Comparator
+            .comparing(Candidate::exact).reversed()
+            .thenComparing(Comparator.comparingInt(Candidate::popularity).reversed())
+            .thenComparingInt(c -> c.tag().getName().length())
+            .thenComparing(c -> c.tag().getName());
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Tag> tags = jdbcTemplate.query("SELECT id, name, type FROM tags", (rs, rowNum) -> {
+            Tag tag = new Tag();
+            tag.setId(rs.getLong(1));
+            tag.setName(rs.getString(2));
+            tag.setType(rs.getString(3));
+            return tag;
+        });
+
+        lock.writeLock().lock();
+        try {
+            prefixIndex.clear();
+            tagsById.clear();
+            gramIndex.clear();
+            tags.forEach(this::index);
+            gramIndex.values().forEach(RoaringBitmap::runOptimize);
+            shortQueryCache.invalidateAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("标签补全索引构建完成: {} 个标签, {} 个片段, 耗时 {}ms",
+                tags.size(), gramIndex.size(), System.currentTimeMillis() - start);
+    }
+
+    public List<Tag> suggest(String query, int limit) {
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        if (q.isEmpty() || limit <= 0) return List.of();
+        if (q.length() <= SHORT_QUERY_LENGTH) {
+            return shortQueryCache.get(q + '\0' + limit, key -> match(q, limit));
+        }
+        return match(q, limit);
+    }
+
+    private List<Tag> match(String q, int limit) {
+        // 前缀匹配（含完全匹配）
+        Collection<Tag> prefixed = prefixIndex.subMap(q, q + Character.MAX_VALUE).values();
+        List<Tag> result = new ArrayList<>(topK(prefixed, q, limit));
+
+        // 前缀结果不足时补充中缀匹配，单个字符不做中缀匹配
+        if (result.size() < limit && q.length() >= 2) {
+            List<Tag> infix = new ArrayList<>();
+            RoaringBitmap candidates = infixCandidates(q);
+            candidates.forEach((int id) -> {
+                Tag tag = tagsById.get(id);
+                if (tag == null) return;
+                String name = tag.getName().toLowerCase(Locale.ROOT);
+                // n-gram 只能粗筛，需要再确认包含关系
+                if (!name.startsWith(q) && name.contains(q)) {
+                    infix.add(tag);
+                }
+            });
+            result.addAll(topK(infix, q, limit - result.size()));
+        }
+        return result;
+    }
+
+    public void add(Tag tag) {
+        Tag snapshot = copyOf(tag);
+        TransactionUtils.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                index(snapshot);
+                shortQueryCache.invalidateAll();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void clear() {
+        TransactionUtils.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                prefixIndex.clear();
+                tagsById.clear();
+                gramIndex.clear();
+                shortQueryCache.invalidateAll();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private void index(Tag tag) {
+        int id = toIndexId(tag.getId());
+        String name = tag.getName().toLowerCase(Locale.ROOT);
+        if (tagsById.put(id, tag) != null) return;
+        prefixIndex.put(name + '\0' + id, tag);
+        for (String gram : grams(name)) {
+            gramIndex.computeIfAbsent(gram, k -> new RoaringBitmap()).add(id);
+        }
+    }
+
+    private RoaringBitmap infixCandidates(String q) {
+        // 2 个字符直接查 bigram，更长的查询对所有 trigram 取交集
+        List<String> queryGrams = q.length() == 2
+                ? List.of(q)
+                : new ArrayList<>(new LinkedHashSet<>(trigrams(q)));
+        lock.readLock().lock();
+        try {
+            List<RoaringBitmap> bitmaps = new ArrayList<>(queryGrams.size());
+            for (String gram : queryGrams) {
+                RoaringBitmap bitmap = gramIndex.get(gram);
+                if (bitmap == null) return new RoaringBitmap();
+                bitmaps.add(bitmap);
+            }
+            return bitmaps.size() == 1 ? bitmaps.get(0).clone() : FastAggregation.and(bitmaps.iterator());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 取排名前 k 的标签：完全匹配优先，然后按图片数量降序、名称长度升序、名称字典序
+    private List<Tag> topK(Collection<Tag> tags, String q, int k) {
+        if (tags.isEmpty() || k <= 0) return List.of();
+        // 小顶堆保留最优的 k 个
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(k + 1, RANKING.reversed());
+        for (Tag tag : tags) {
+            Candidate candidate = new Candidate(tag, tag.getName().equalsIgnoreCase(q),
+                    tagIndexService.getTagCardinality(tag.getName()));
+            if (heap.size() < k) {
+                heap.offer(candidate);
+            } else if (RANKING.compare(candidate, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(candidate);
+            }
+        }
+        List<Candidate> ranked = new ArrayList<>(heap);
+        ranked.sort(RANKING);
+        return ranked.stream().map(Candidate::tag).toList();
+    }
+
+    private static Set<String> grams(String name) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 2 <= name.length(); i++) {
+            grams.add(name.substring(i, i + 2));
+        }
+        grams.addAll(trigrams(name));
+        return grams;
+    }
+
+    private static List<String> trigrams(String s) {
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            grams.add(s.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    private static Tag copyOf(Tag tag) {
+        Tag copy = new Tag();
+        copy.setId(tag.getId());
+        copy.setName(tag.getName());
+        copy.setType(tag.getType());
+        return copy;
+    }
+
+    private static int toIndexId(long tagId) {
+        if (tagId < 0 || tagId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("标签ID超出索引范围: " + tagId);
+        }
+        return (int) tagId;
+    }
+
+    private record Candidate(Tag tag, boolean exact, int popularity) {
+    }
+}
@@ -0,0 +1,223 @@
+package com.tamakara.bakabooru.module.tag.service;
+
+import com.tamakara.bakabooru.utils.TransactionUtils;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 标签 -> 图片ID 的内存倒排索引，使用 Roaring 压缩位图存储。
+ * 标签的包含/排除查询直接在位图上做 AND / ANDNOT，避免逐个标签的 EXISTS 子查询。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TagIndexService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // 标签名 -> 拥有该标签的图片ID
+    private final Map<String, RoaringBitmap> tagBitmaps = new HashMap<>();
+
+    // 所有图片ID，用于只有排除标签时求补集
+    private RoaringBitmap allImages = new RoaringBitmap();
+
+    // 位图本身不是线程安全的，映射表与位图的所有访问都由该锁保护
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Map<String, RoaringBitmap> bitmaps = new HashMap<>();
+        RoaringBitmap images = new RoaringBitmap();
+
+        jdbcTemplate.query("SELECT id FROM images", rs -> {
+            images.add(toIndexId(rs.getLong(1)));
+        });
+        jdbcTemplate.query("SELECT it.image_id, t.name FROM image_tags it JOIN tags t ON t.id = it.tag_id", rs -> {
+            bitmaps.computeIfAbsent(rs.getString(2), k -> new RoaringBitmap()).add(toIndexId(rs.getLong(1)));
+        });
+        bitmaps.values().forEach(RoaringBitmap::runOptimize);
+        images.runOptimize();
+
+        lock.writeLock().lock();
+        try {
+            tagBitmaps.clear();
+            tagBitmaps.putAll(bitmaps);
+            allImages = images;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("标签索引构建完成: {} 张图片, {} 个标签, 耗时 {}ms",
+                images.getCardinality(), bitmaps.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 解析标签查询。没有任何标签条件时返回 null，否则返回匹配的图片ID集合（调用方可自由修改）。
+     */
+    public RoaringBitmap resolve(Collection<String> includedTags, Collection<String> excludedTags) {
+        if (includedTags.isEmpty() && excludedTags.isEmpty()) return null;
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result;
+            if (includedTags.isEmpty()) {
+                result = allImages.clone();
+            } else {
+                List<RoaringBitmap> included = new ArrayList<>(includedTags.size());
+                for (String tag : includedTags) {
+                    RoaringBitmap bitmap = tagBitmaps.get(tag);
+                    if (bitmap == null) return new RoaringBitmap();
+                    included.add(bitmap);
+                }
+                result = included.size() == 1
+                        ? included.get(0).clone()
+                        : FastAggregation.and(included.iterator());
+            }
+
+            List<RoaringBitmap> excluded = new ArrayList<>(excludedTags.size());
+            for (String tag : excludedTags) {
+                RoaringBitmap bitmap = tagBitmaps.get(tag);
+                if (bitmap != null) excluded.add(bitmap);
+            }
+            if (!excluded.isEmpty()) {
+                result.andNot(FastAggregation.or(excluded.iterator()));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 返回不在给定集合中的所有图片ID。
+     */
+    public RoaringBitmap complement(RoaringBitmap ids) {
+        lock.readLock().lock();
+        try {
+            return RoaringBitmap.andNot(allImages, ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getImageCount() {
+        lock.readLock().lock();
+        try {
+            return allImages.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTagCardinality(String tag) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap bitmap = tagBitmaps.get(tag);
+            return bitmap == null ? 0 : bitmap.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 以下修改操作均在事务提交后生效，避免回滚导致索引与数据库不一致
+
+    public void addImage(Long imageId, Collection<String> tags) {
+        List<String> snapshot = List.copyOf(tags);
+        TransactionUtils.afterCommit(() -> {
+            int id = toIndexId(imageId);
+            lock.writeLock().lock();
+            try {
+                allImages.add(id);
+                for (String tag : snapshot) {
+                    tagBitmaps.computeIfAbsent(tag, k -> new RoaringBitmap()).add(id);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * 移除图片，tags 为图片删除前的标签，只更新这些标签的位图。
+     */
+    public void removeImage(Long imageId, Collection<String> tags) {
+        List<String> snapshot = List.copyOf(tags);
+        TransactionUtils.afterCommit(() -> {
+            int id = toIndexId(imageId);
+            lock.writeLock().lock();
+            try {
+                allImages.remove(id);
+                for (String tag : snapshot) {
+                    RoaringBitmap bitmap = tagBitmaps.get(tag);
+                    if (bitmap != null) bitmap.remove(id);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void addTag(Long imageId, String tag) {
+        TransactionUtils.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                tagBitmaps.computeIfAbsent(tag, k -> new RoaringBitmap()).add(toIndexId(imageId));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void removeTags(Long imageId, Collection<String> tags) {
+        List<String> snapshot = List.copyOf(tags);
+        TransactionUtils.afterCommit(() -> {
+            int id = toIndexId(imageId);
+            lock.writeLock().lock();
+            try {
+                for (String tag : snapshot) {
+                    RoaringBitmap bitmap = tagBitmaps.get(tag);
+                    if (bitmap != null) bitmap.remove(id);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void replaceTags(Long imageId, Collection<String> oldTags, Collection<String> newTags) {
+        removeTags(imageId, oldTags);
+        addImage(imageId, newTags);
+    }
+
+    public void clear() {
+        TransactionUtils.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                tagBitmaps.clear();
+                allImages = new RoaringBitmap();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private static int toIndexId(long imageId) {
+        if (imageId < 0 || imageId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("图片ID超出索引范围: " + imageId);
+        }
+        return (int) imageId;
+    }
+}
@@ -1,8 +1,6 @@
 package com.tamakara.bakabooru.module.tag.service;
 
-import com.tamakara.bakabooru.module.ai.dto.TagImageRequestDto;
-import com.tamakara.bakabooru.module.ai.dto.TagImageResponseDto;
-import com.tamakara.bakabooru.module.ai.service.AiService;
+import com.tamakara.bakabooru.module.ai.service.AiTagBatchService;
 import com.tamakara.bakabooru.module.system.service.SystemSettingService;
 import com.tamakara.bakabooru.module.tag.dto.TagDto;
 import com.tamakara.bakabooru.module.tag.entity.Tag;
@@ -14,6 +12,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,9 +20,10 @@ import java.util.stream.Collectors;
 public class TagService {
 
     private final SystemSettingService systemSettingService;
-    private final AiService aiService;
+    private final AiTagBatchService aiTagBatchService;
     private final TagRepository tagRepository;
     private final TagMapper tagMapper;
+    private final TagAutocompleteService tagAutocompleteService;
 
     public List<TagDto> listTags() {
         return tagRepository.findAll().stream()
@@ -31,23 +31,8 @@ public class TagService {
                 .collect(Collectors.toList());
     }
 
-    public List<TagDto> searchTags(String query) {
-        String lowerQuery = query.toLowerCase();
-        return tagRepository.findByNameContainingIgnoreCase(query).stream()
-                .sorted((t1, t2) -> {
-                    String n1 = t1.getName().toLowerCase();
-                    String n2 = t2.getName().toLowerCase();
-                    boolean s1 = n1.startsWith(lowerQuery);
-                    boolean s2 = n2.startsWith(lowerQuery);
-
-                    if (s1 && !s2) {
-                        return -1;
-                    } else if (!s1 && s2) {
-                        return 1;
-                    } else {
-                        return Integer.compare(n1.length(), n2.length());
-                    }
-                })
+    public List<TagDto> searchTags(String query, int limit) {
+        return tagAutocompleteService.suggest(query, limit).stream()
                 .map(tagMapper::toDto)
                 .collect(Collectors.toList());
     }
@@ -59,7 +44,9 @@ public class TagService {
                     Tag tag = new Tag();
                     tag.setName(name);
                     tag.setType(type);
-                    return tagRepository.save(tag);
+                    Tag saved = tagRepository.save(tag);
+                    tagAutocompleteService.add(saved);
+                    return saved;
                 });
     }
 
@@ -67,17 +54,16 @@ public class TagService {
         return tagRepository.findByName(name).orElse(null);
     }
 
+    /**
+     * 调用 AI 服务生成标签。请求与其他线程的请求合并为批次调用，阻塞到所在批次返回。
+     */
     public Map<String, List<String>> tagImage(String imagePath) {
         double threshold = systemSettingService.getDoubleSetting("tag.threshold", 0.61);
-        TagImageRequestDto requestBody = new TagImageRequestDto();
-        requestBody.setImagePath(imagePath);
-        requestBody.setThreshold(threshold);
-
         try {
-            TagImageResponseDto response = aiService.tagImage(requestBody);
-            return response.getData();
-        } catch (Exception e) {
-            throw new RuntimeException("标签生成失败: " + e.getMessage());
+            return aiTagBatchService.submit(imagePath, threshold).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new RuntimeException("标签生成失败: " + cause.getMessage());
         }
     }
 }
@@ -1,13 +1,22 @@
 package com.tamakara.bakabooru.module.upload.controller;
 
+import com.tamakara.bakabooru.module.upload.dto.HashCheckRequestDto;
+import com.tamakara.bakabooru.module.upload.dto.HashCheckResponseDto;
+import com.tamakara.bakabooru.module.upload.dto.ImportStatusDto;
+import com.tamakara.bakabooru.module.upload.dto.UploadSessionDto;
+import com.tamakara.bakabooru.module.upload.dto.UploadSessionRequestDto;
 import com.tamakara.bakabooru.module.upload.model.UploadTask;
+import com.tamakara.bakabooru.module.upload.service.BulkImportService;
+import com.tamakara.bakabooru.module.upload.service.ChunkedUploadService;
 import com.tamakara.bakabooru.module.upload.service.UploadQueueService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -17,6 +26,8 @@ import java.util.List;
 public class UploadController {
 
     private final UploadQueueService uploadQueueService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final BulkImportService bulkImportService;
 
     @PostMapping
     @Operation(summary = "上传文件", description = "上传单个文件并开始处理")
@@ -26,6 +37,64 @@ public class UploadController {
         return uploadQueueService.createTask(file, enableTagging);
     }
 
+    @PostMapping("/check")
+    @Operation(summary = "上传预检", description = "批量检查 SHA-256 哈希，返回已存在的部分，客户端可跳过这些文件")
+    public HashCheckResponseDto checkHashes(@RequestBody HashCheckRequestDto request) {
+        List<String> hashes = request.getHashes() != null ? request.getHashes() : List.of();
+        return new HashCheckResponseDto(List.copyOf(uploadQueueService.findExistingHashes(hashes)));
+    }
+
+    @PostMapping("/sessions")
+    @Operation(summary = "创建分块上传会话", description = "按文件大小预分配待处理文件，返回的任务 ID 即会话 ID。"
+            + "提供的哈希已存在时直接返回失败的重复任务，无需上传内容")
+    public UploadTask createSession(@RequestBody UploadSessionRequestDto request) {
+        return chunkedUploadService.createSession(request);
+    }
+
+    @PutMapping("/sessions/{id}/chunks")
+    @Operation(summary = "上传分块", description = "请求体为分块的原始字节，从 offset 处写入，分块可乱序、并行上传")
+    public UploadSessionDto uploadChunk(@PathVariable String id,
+                                        @RequestParam long offset,
+                                        HttpServletRequest request) throws IOException {
+        return chunkedUploadService.writeChunk(id, offset, request.getContentLengthLong(), request.getInputStream());
+    }
+
+    @GetMapping("/sessions/{id}")
+    @Operation(summary = "查询分块上传会话", description = "返回已接收的区间，用于断点续传")
+    public UploadSessionDto getSession(@PathVariable String id) {
+        return chunkedUploadService.getSessionStatus(id);
+    }
+
+    @PostMapping("/sessions/{id}/commit")
+    @Operation(summary = "提交分块上传", description = "所有分块接收完毕后开始处理")
+    public UploadTask commitSession(@PathVariable String id) {
+        return chunkedUploadService.commit(id);
+    }
+
+    @DeleteMapping("/sessions/{id}")
+    @Operation(summary = "取消分块上传", description = "删除会话及已上传的数据")
+    public void abortSession(@PathVariable String id) {
+        chunkedUploadService.abort(id);
+    }
+
+    @PostMapping("/import")
+    @Operation(summary = "开始批量导入", description = "按设置遍历服务器上的导入目录并批量入库，可选持续监听新文件")
+    public ImportStatusDto startImport() {
+        return bulkImportService.start();
+    }
+
+    @GetMapping("/import")
+    @Operation(summary = "查询批量导入进度", description = "返回已扫描、导入、重复与失败的文件数及吞吐量")
+    public ImportStatusDto getImportStatus() {
+        return bulkImportService.getStatus();
+    }
+
+    @DeleteMapping("/import")
+    @Operation(summary = "停止批量导入", description = "停止遍历与监听，已导入的图片保留")
+    public void stopImport() {
+        bulkImportService.stop();
+    }
+
     @GetMapping("/tasks")
     @Operation(summary = "获取上传任务列表", description = "获取所有上传任务的状态")
     public List<UploadTask> listTasks() {
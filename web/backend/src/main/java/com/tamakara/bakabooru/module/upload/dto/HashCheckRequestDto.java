@@ -0,0 +1,11 @@
+package com.tamakara.bakabooru.module.upload.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class HashCheckRequestDto {
+    // 客户端计算的 SHA-256，十六进制
+    private List<String> hashes;
+}
@@ -0,0 +1,15 @@
+package com.tamakara.bakabooru.module.upload.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HashCheckResponseDto {
+    // 已存在（已入库或正在处理）的哈希
+    private List<String> existing;
+}
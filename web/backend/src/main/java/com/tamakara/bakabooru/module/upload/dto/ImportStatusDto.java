@@ -0,0 +1,21 @@
+package com.tamakara.bakabooru.module.upload.dto;
+
+import lombok.Data;
+
+@Data
+public class ImportStatusDto {
+    // IDLE / SCANNING / WATCHING / COMPLETED / CANCELLED / FAILED
+    private String status;
+    private String directory;
+    private String mode;
+    private long scannedFiles;
+    private long scannedBytes;
+    private long importedFiles;
+    private long duplicateFiles;
+    private long failedFiles;
+    private long elapsedMillis;
+    // 按已扫描文件计算的吞吐量
+    private double filesPerSecond;
+    private double bytesPerSecond;
+    private String errorMessage;
+}
@@ -0,0 +1,14 @@
+package com.tamakara.bakabooru.module.upload.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class UploadSessionDto {
+    private String id;
+    private long size;
+    private long receivedBytes;
+    // 已接收的区间 [起点, 终点)，按起点排序
+    private List<long[]> received;
+}
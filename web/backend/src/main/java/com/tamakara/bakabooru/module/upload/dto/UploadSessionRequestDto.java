@@ -0,0 +1,12 @@
+package com.tamakara.bakabooru.module.upload.dto;
+
+import lombok.Data;
+
+@Data
+public class UploadSessionRequestDto {
+    private String filename;
+    private long size;
+    private Boolean enableTagging;
+    // 客户端计算的 SHA-256，可选。图库已有该哈希时不创建会话
+    private String hash;
+}
@@ -0,0 +1,21 @@
+package com.tamakara.bakabooru.module.upload.model;
+
+import com.tamakara.bakabooru.module.gallery.entity.Image;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 上传流水线中在各阶段之间传递的任务及中间结果。
+ */
+@Data
+public class UploadJob {
+    private final UploadTask task;
+    private final Image image = new Image();
+    // 打标结果，标签类型 -> 标签名。标签实体在入库阶段创建，避免多个线程并发插入同名标签
+    private Map<String, List<String>> tagData = Map.of();
+
+    // 进入当前阶段队列的时间
+    private long enqueuedAt;
+}
@@ -0,0 +1,189 @@
+package com.tamakara.bakabooru.module.upload.model;
+
+import com.tamakara.bakabooru.utils.FileUtils;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分块上传会话：分块可以乱序、并行写入预分配的待处理文件，已接收的区间合并记录。
+ * 哈希随着从文件头开始的连续区间增长逐步计算，提交时只需补算剩余部分。
+ */
+public class UploadSession {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Getter
+    private final String id;
+    @Getter
+    private final long size;
+    @Getter
+    private final Path file;
+    @Getter
+    private final FileChannel channel;
+
+    // 已接收的区间，起点 -> 终点（不含）
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private long receivedBytes;
+
+    // 正在写入的分块数，提交开始后不再接受写入
+    private int writers;
+    private boolean committing;
+
+    // 哈希已计算到的位置
+    private final MessageDigest digest = FileUtils.sha256();
+    private long hashedOffset;
+    private final ReentrantLock hashLock = new ReentrantLock();
+
+    @Getter
+    private volatile long lastActive = System.currentTimeMillis();
+
+    private UploadSession(String id, long size, Path file, FileChannel channel) {
+        this.id = id;
+        this.size = size;
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * 创建会话并按文件大小预分配待处理文件。
+     */
+    public static UploadSession open(String id, long size, Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size);
+        }
+        return new UploadSession(id, size, file, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    public void touch() {
+        lastActive = System.currentTimeMillis();
+    }
+
+    /**
+     * 开始写入一个分块，会话已开始提交时返回 false。成功时需调用 endWrite。
+     */
+    public synchronized boolean beginWrite() {
+        if (committing) return false;
+        writers++;
+        return true;
+    }
+
+    public synchronized void endWrite() {
+        writers--;
+    }
+
+    /**
+     * 开始提交，仍有分块在写入或已在提交时返回 false。成功后不再接受分块写入。
+     */
+    public synchronized boolean beginCommit() {
+        if (committing || writers > 0) return false;
+        committing = true;
+        return true;
+    }
+
+    /**
+     * 记录已写入的区间 [start, end)，与相邻或重叠的区间合并。
+     */
+    public synchronized void addRange(long start, long end) {
+        if (end <= start) return;
+        Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+        if (floor != null && floor.getValue() >= start) {
+            start = floor.getKey();
+        }
+        Map.Entry<Long, Long> next;
+        while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+            receivedBytes -= next.getValue() - next.getKey();
+        }
+        ranges.put(start, end);
+        receivedBytes += end - start;
+    }
+
+    /**
+     * 区间 [start, end) 是否已全部接收。
+     */
+    public synchronized boolean covers(long start, long end) {
+        Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+        return floor != null && floor.getValue() >= end;
+    }
+
+    public synchronized List<long[]> getRanges() {
+        List<long[]> result = new ArrayList<>(ranges.size());
+        ranges.forEach((start, end) -> result.add(new long[]{start, end}));
+        return result;
+    }
+
+    public synchronized long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public synchronized boolean isComplete() {
+        return receivedBytes == size;
+    }
+
+    // 从文件头开始的连续区间终点
+    private synchronized long contiguousEnd() {
+        Map.Entry<Long, Long> first = ranges.firstEntry();
+        return first != null && first.getKey() == 0 ? first.getValue() : 0;
+    }
+
+    /**
+     * 把哈希推进到连续区间的终点。已有线程在计算时直接返回，剩余部分由该线程或提交时补算。
+     */
+    public void advanceHash() throws IOException {
+        if (!hashLock.tryLock()) return;
+        try {
+            hash();
+        } finally {
+            hashLock.unlock();
+        }
+    }
+
+    /**
+     * 补算剩余哈希并关闭文件，返回十六进制哈希。调用前所有分块必须已写入。
+     */
+    public String finish() throws IOException {
+        hashLock.lock();
+        try {
+            hash();
+            if (hashedOffset != size) {
+                throw new IOException("分块未全部上传");
+            }
+            return FileUtils.toHex(digest.digest());
+        } finally {
+            hashLock.unlock();
+            close();
+        }
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void hash() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long end;
+        while (hashedOffset < (end = contiguousEnd())) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - hashedOffset));
+            int read = channel.read(buffer, hashedOffset);
+            if (read < 0) throw new IOException("待处理文件被截断");
+            digest.update(buffer.array(), 0, read);
+            hashedOffset += read;
+        }
+    }
+}
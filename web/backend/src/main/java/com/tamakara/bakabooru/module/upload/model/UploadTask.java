@@ -1,26 +1,36 @@
 package com.tamakara.bakabooru.module.upload.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Data
 public class UploadTask {
     private String id;
     private String filename;
     private long size;
+    // 分块上传已接收的字节数
+    private long uploadedBytes;
     private UploadStatus status;
     private String errorMessage;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    // 各处理阶段耗时（毫秒），<阶段> 为处理耗时，<阶段>.queue 为排队耗时
+    private Map<String, Long> stageTimings = new ConcurrentHashMap<>();
 
     // 内部使用
     private String hash;
     private boolean enableTagging;
+    // 已从任务列表删除，流水线中后续的状态变化不再写入任务日志
+    @JsonIgnore
+    private volatile boolean removed;
 
     public enum UploadStatus {
         PENDING, // 等待处理
-        UPLOADING, // 如果我们一次性接收文件，则实际上不使用，但如果我们流式传输或分块传输，则很有用
+        UPLOADING, // 分块上传中，提交后进入 PENDING
         PROCESSING, // 预处理（哈希，缩略图）
         TAGGING, // AI 标注器
         SAVING, // 保存到数据库
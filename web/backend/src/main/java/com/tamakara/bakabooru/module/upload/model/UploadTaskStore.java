@@ -25,7 +25,10 @@ public class UploadTaskStore {
 
     // 删除任务
     public void removeTask(String id) {
-        taskMap.remove(id);
+        UploadTask task = taskMap.remove(id);
+        if (task != null) {
+            task.setRemoved(true);
+        }
         taskOrder.remove(id); // O(n)，但删除频率低可接受
     }
 
@@ -41,15 +44,18 @@ public class UploadTaskStore {
         return result;
     }
 
-    // 清理已完成或失败的任务
-    public void clearCompletedOrFailed() {
+    // 清理已完成或失败的任务，返回被清理的任务ID
+    public List<String> clearCompletedOrFailed() {
+        List<String> removed = new ArrayList<>();
         for (String id : taskOrder) {
             UploadTask task = taskMap.get(id);
             if (task != null && (task.getStatus() == UploadTask.UploadStatus.COMPLETED
                     || task.getStatus() == UploadTask.UploadStatus.FAILED)) {
                 removeTask(id);
+                removed.add(id);
             }
         }
+        return removed;
     }
 
     // 返回当前任务总数
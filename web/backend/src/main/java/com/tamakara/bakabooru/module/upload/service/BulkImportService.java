@@ -0,0 +1,570 @@
+package com.tamakara.bakabooru.module.upload.service;
+
+import com.tamakara.bakabooru.module.file.service.StorageService;
+import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
+import com.tamakara.bakabooru.module.gallery.service.SearchCacheService;
+import com.tamakara.bakabooru.module.system.service.SystemSettingService;
+import com.tamakara.bakabooru.module.tag.service.TagIndexService;
+import com.tamakara.bakabooru.module.upload.dto.ImportStatusDto;
+import com.tamakara.bakabooru.utils.FileUtils;
+import com.tamakara.bakabooru.utils.ImageHeaderUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端批量导入：并行遍历 import.directory，边读取边计算哈希，按批与图库去重后
+ * 以硬链接或移动的方式放入原图目录（同一文件系统时不复制数据），再在一个事务中批量插入。
+ * import.watch 开启时遍历结束后继续监听目录，新文件写入完成后增量导入。
+ * 导入的图片不经过 AI 打标，缩略图由后台补全任务处理。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkImportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 每个事务插入的行数
+    private static final int BATCH_SIZE = 1000;
+
+    // IN 查询每批的参数个数，低于 SQLite 的参数上限
+    private static final int HASH_QUERY_BATCH = 500;
+
+    // 单个遍历任务处理的文件数，大目录拆分后并行计算哈希
+    private static final int FILES_PER_TASK = 64;
+
+    // 已计算哈希、等待写入的文件数上限，写入跟不上时遍历线程阻塞
+    private static final int QUEUE_CAPACITY = 4 * BATCH_SIZE;
+
+    // 监听模式下文件超过该时间没有变化才视为写入完成
+    private static final long QUIET_MILLIS = 2000;
+
+    private static final long PROGRESS_LOG_MILLIS = 10_000;
+
+    private static final String INSERT = "INSERT OR IGNORE INTO images "
+            + "(title, file_name, extension, size, width, height, hash, view_count, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, ?)";
+
+    private final StorageService storageService;
+    private final ImageRepository imageRepository;
+    private final SystemSettingService systemSettingService;
+    private final TagIndexService tagIndexService;
+    private final SearchCacheService searchCacheService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile ImportJob job;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeWatch() {
+        if (!systemSettingService.getBooleanSetting("import.watch", false)
+                || systemSettingService.getSetting("import.directory", "").isBlank()) {
+            return;
+        }
+        try {
+            start();
+        } catch (Exception e) {
+            log.warn("启动导入目录监听失败", e);
+        }
+    }
+
+    /**
+     * 按当前设置开始导入，已有导入任务在运行时返回 409。
+     */
+    public synchronized ImportStatusDto start() {
+        if (job != null && job.isActive()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "导入任务正在进行");
+        }
+        String directory = systemSettingService.getSetting("import.directory", "").trim();
+        if (directory.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "未配置导入目录");
+        }
+        Path root = Paths.get(directory).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "导入目录不存在: " + root);
+        }
+        boolean move = "move".equalsIgnoreCase(systemSettingService.getSetting("import.mode", "link"));
+        boolean watch = systemSettingService.getBooleanSetting("import.watch", false);
+        Set<String> extensions = new HashSet<>();
+        for (String ext : systemSettingService.getSetting("upload.allowed-extensions", "jpg,png,webp,gif,jpeg").split(",")) {
+            extensions.add(ext.trim().toLowerCase(Locale.ROOT));
+        }
+
+        job = new ImportJob(root, move, watch, extensions);
+        job.start();
+        return job.toDto();
+    }
+
+    public synchronized void stop() {
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    public ImportStatusDto getStatus() {
+        ImportJob current = job;
+        if (current == null) {
+            ImportStatusDto dto = new ImportStatusDto();
+            dto.setStatus("IDLE");
+            return dto;
+        }
+        return current.toDto();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stop();
+    }
+
+    private record Candidate(Path file, String hash, long size, Integer width, Integer height) {
+    }
+
+    // 放入原图目录后的文件，事务失败时据此撤销
+    private record Placed(Candidate candidate, Path target) {
+    }
+
+    private final class ImportJob {
+        final Path root;
+        final boolean move;
+        final boolean watch;
+        final Set<String> extensions;
+
+        final LongAdder scannedFiles = new LongAdder();
+        final LongAdder scannedBytes = new LongAdder();
+        final LongAdder importedFiles = new LongAdder();
+        final LongAdder duplicateFiles = new LongAdder();
+        final LongAdder failedFiles = new LongAdder();
+
+        final BlockingQueue<Candidate> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        final Map<WatchKey, Path> watchKeys = new ConcurrentHashMap<>();
+        WatchService watchService;
+        Thread walker;
+        Thread writer;
+
+        final long startedAt = System.nanoTime();
+        volatile long finishedAt;
+        volatile String status = "SCANNING";
+        volatile String errorMessage;
+        volatile boolean cancelled;
+        // 遍历与监听均已结束，写入线程处理完队列后退出
+        volatile boolean producing = true;
+
+        ImportJob(Path root, boolean move, boolean watch, Set<String> extensions) {
+            this.root = root;
+            this.move = move;
+            this.watch = watch;
+            this.extensions = extensions;
+        }
+
+        boolean isActive() {
+            return finishedAt == 0;
+        }
+
+        void start() {
+            writer = new Thread(this::write, "bulk-import-writer");
+            writer.setDaemon(true);
+            walker = new Thread(this::walk, "bulk-import");
+            walker.setDaemon(true);
+            writer.start();
+            walker.start();
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (walker != null) walker.interrupt();
+            pool.shutdownNow();
+            closeWatchService();
+        }
+
+        private void walk() {
+            log.info("开始导入: {}（{}）", root, move ? "移动" : "硬链接");
+            try {
+                if (watch) {
+                    watchService = root.getFileSystem().newWatchService();
+                }
+                // 先注册监听再遍历，遍历期间新增的文件不会遗漏
+                pool.invoke(new WalkTask(root));
+                if (watch && !cancelled) {
+                    status = "WATCHING";
+                    log.info("导入目录遍历完成，开始监听新文件: {}", root);
+                    watchLoop();
+                }
+            } catch (ClosedWatchServiceException | CancellationException | RejectedExecutionException e) {
+                // 已取消
+            } catch (Exception e) {
+                errorMessage = e.getMessage();
+                log.error("导入失败: {}", root, e);
+            } finally {
+                pool.shutdown();
+                closeWatchService();
+                producing = false;
+            }
+        }
+
+        private void watchLoop() throws IOException {
+            // 尚未写完的新文件 -> 最近一次变化的时间
+            Map<Path, Long> changed = new HashMap<>();
+            while (!cancelled) {
+                WatchKey key;
+                try {
+                    key = watchService.poll(500, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (key != null) {
+                    Path dir = watchKeys.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // 事件丢失，重新遍历一次，已导入的文件会被去重
+                            log.warn("导入目录监听事件溢出，重新遍历: {}", root);
+                            pool.invoke(new WalkTask(root));
+                            continue;
+                        }
+                        if (dir == null) continue;
+                        Path child = dir.resolve((Path) event.context());
+                        if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                                pool.invoke(new WalkTask(child));
+                            }
+                        } else if (accepts(child)) {
+                            changed.put(child, System.currentTimeMillis());
+                        }
+                    }
+                    if (!key.reset()) {
+                        watchKeys.remove(key);
+                    }
+                }
+
+                long quietBefore = System.currentTimeMillis() - QUIET_MILLIS;
+                List<Path> ready = new ArrayList<>();
+                changed.entrySet().removeIf(entry -> {
+                    if (entry.getValue() > quietBefore) return false;
+                    ready.add(entry.getKey());
+                    return true;
+                });
+                if (!ready.isEmpty()) {
+                    pool.invoke(new HashTask(ready));
+                }
+            }
+        }
+
+        private boolean accepts(Path file) {
+            return extensions.contains(FileUtils.getExtension(file.getFileName().toString())
+                    .toLowerCase(Locale.ROOT).replace(".", ""));
+        }
+
+        // 计算哈希后交给写入线程，队列满时阻塞
+        private void hash(Path file) {
+            try {
+                if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) return;
+                MessageDigest digest = FileUtils.sha256();
+                long size = 0;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try (InputStream in = Files.newInputStream(file)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                        size += read;
+                    }
+                }
+                scannedFiles.increment();
+                scannedBytes.add(size);
+                if (size == 0) {
+                    failedFiles.increment();
+                    return;
+                }
+                // 文件刚读完，文件头仍在页缓存中
+                Dimension dimension = readDimensions(file);
+                Candidate candidate = new Candidate(file, FileUtils.toHex(digest.digest()), size,
+                        dimension != null ? dimension.width : null, dimension != null ? dimension.height : null);
+                while (!queue.offer(candidate, 500, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                failedFiles.increment();
+                log.warn("读取导入文件失败: {}", file, e);
+            }
+        }
+
+        private Dimension readDimensions(Path file) {
+            try {
+                return ImageHeaderUtils.readDimensions(file);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private void write() {
+            long lastLog = System.currentTimeMillis();
+            List<Candidate> batch = new ArrayList<>(BATCH_SIZE);
+            try {
+                while (true) {
+                    Candidate first = queue.poll(500, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (!producing && queue.isEmpty()) break;
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    if (!cancelled) {
+                        flush(batch);
+                    }
+                    batch.clear();
+
+                    if (System.currentTimeMillis() - lastLog >= PROGRESS_LOG_MILLIS) {
+                        lastLog = System.currentTimeMillis();
+                        ImportStatusDto dto = toDto();
+                        log.info("导入进度: 扫描 {} 个文件，导入 {} 个，重复 {} 个，失败 {} 个，{} 个/秒，{} MB/秒",
+                                dto.getScannedFiles(), dto.getImportedFiles(), dto.getDuplicateFiles(),
+                                dto.getFailedFiles(), Math.round(dto.getFilesPerSecond()),
+                                Math.round(dto.getBytesPerSecond() / (1024 * 1024)));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                errorMessage = e.getMessage();
+                log.error("导入写入失败", e);
+                cancel();
+            } finally {
+                finishedAt = System.nanoTime();
+                status = errorMessage != null ? "FAILED" : cancelled ? "CANCELLED" : "COMPLETED";
+                ImportStatusDto dto = toDto();
+                log.info("导入结束（{}）: 扫描 {} 个文件，导入 {} 个，重复 {} 个，失败 {} 个，耗时 {} 秒",
+                        status, dto.getScannedFiles(), dto.getImportedFiles(), dto.getDuplicateFiles(),
+                        dto.getFailedFiles(), dto.getElapsedMillis() / 1000);
+            }
+        }
+
+        private void flush(List<Candidate> batch) {
+            // 批内去重，再与图库去重
+            Map<String, Candidate> unique = new LinkedHashMap<>();
+            for (Candidate candidate : batch) {
+                if (unique.putIfAbsent(candidate.hash(), candidate) != null) {
+                    duplicateFiles.increment();
+                }
+            }
+            List<String> hashes = new ArrayList<>(unique.keySet());
+            for (int i = 0; i < hashes.size(); i += HASH_QUERY_BATCH) {
+                for (String existing : imageRepository.findExistingHashes(
+                        hashes.subList(i, Math.min(i + HASH_QUERY_BATCH, hashes.size())))) {
+                    unique.remove(existing);
+                    duplicateFiles.increment();
+                }
+            }
+
+            List<Placed> placed = new ArrayList<>(unique.size());
+            for (Candidate candidate : unique.values()) {
+                try {
+                    placed.add(place(candidate));
+                } catch (IOException e) {
+                    failedFiles.increment();
+                    log.warn("导入文件失败: {}", candidate.file(), e);
+                }
+            }
+            if (placed.isEmpty()) return;
+
+            try {
+                int inserted = insert(placed);
+                importedFiles.add(inserted);
+                duplicateFiles.add(placed.size() - inserted);
+            } catch (RuntimeException e) {
+                placed.forEach(this::undo);
+                failedFiles.add(placed.size());
+                throw e;
+            }
+            searchCacheService.invalidate();
+        }
+
+        // 同一文件系统时硬链接或移动，不复制数据；跨文件系统时退回复制
+        private Placed place(Candidate candidate) throws IOException {
+            Path target = storageService.getShardedImagePath(candidate.hash()).normalize().toAbsolutePath();
+            // 内容按哈希寻址，已存在的文件（例如上次中断留下的）与导入文件相同
+            if (Files.exists(target)) {
+                return new Placed(candidate, null);
+            }
+            Files.createDirectories(target.getParent());
+            if (move) {
+                try {
+                    Files.move(candidate.file(), target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(candidate.file(), target);
+                }
+            } else {
+                try {
+                    Files.createLink(target, candidate.file());
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    Files.copy(candidate.file(), target);
+                }
+            }
+            return new Placed(candidate, target);
+        }
+
+        private void undo(Placed placed) {
+            if (placed.target() == null) return;
+            try {
+                if (move) {
+                    Files.move(placed.target(), placed.candidate().file());
+                } else {
+                    Files.deleteIfExists(placed.target());
+                }
+            } catch (IOException e) {
+                log.warn("撤销导入文件失败: {}", placed.target(), e);
+            }
+        }
+
+        private int insert(List<Placed> placed) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> rows = new ArrayList<>(placed.size());
+            for (Placed item : placed) {
+                String filename = item.candidate().file().getFileName().toString();
+                String title = filename;
+                String extension = "";
+                int dotIndex = filename.lastIndexOf('.');
+                if (dotIndex != -1) {
+                    title = filename.substring(0, dotIndex);
+                    extension = filename.substring(dotIndex + 1);
+                }
+                Candidate candidate = item.candidate();
+                rows.add(new Object[]{title, filename, extension, candidate.size(), candidate.width(), candidate.height(),
+                        candidate.hash(), now, now});
+            }
+
+            List<Long> insertedIds = transactionTemplate.execute(status -> {
+                List<String> insertedHashes = new ArrayList<>();
+                int[] results = jdbcTemplate.batchUpdate(INSERT, rows);
+                for (int i = 0; i < results.length; i++) {
+                    // 同一哈希的图片已由常规上传入库时忽略
+                    if (results[i] != 0) {
+                        insertedHashes.add(placed.get(i).candidate().hash());
+                    }
+                }
+                List<Long> ids = new ArrayList<>(insertedHashes.size());
+                for (int i = 0; i < insertedHashes.size(); i += HASH_QUERY_BATCH) {
+                    List<String> chunk = insertedHashes.subList(i, Math.min(i + HASH_QUERY_BATCH, insertedHashes.size()));
+                    String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                    ids.addAll(jdbcTemplate.queryForList("SELECT id FROM images WHERE hash IN (" + placeholders + ")",
+                            Long.class, chunk.toArray()));
+                }
+                return ids;
+            });
+            if (insertedIds == null) return 0;
+            // 事务已提交，直接更新索引
+            for (Long id : insertedIds) {
+                tagIndexService.addImage(id, List.of());
+            }
+            return insertedIds.size();
+        }
+
+        private void closeWatchService() {
+            WatchService service = watchService;
+            if (service == null) return;
+            try {
+                service.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        ImportStatusDto toDto() {
+            ImportStatusDto dto = new ImportStatusDto();
+            dto.setStatus(status);
+            dto.setDirectory(root.toString());
+            dto.setMode(move ? "move" : "link");
+            dto.setScannedFiles(scannedFiles.sum());
+            dto.setScannedBytes(scannedBytes.sum());
+            dto.setImportedFiles(importedFiles.sum());
+            dto.setDuplicateFiles(duplicateFiles.sum());
+            dto.setFailedFiles(failedFiles.sum());
+            long end = finishedAt != 0 ? finishedAt : System.nanoTime();
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(end - startedAt);
+            dto.setElapsedMillis(elapsedMillis);
+            if (elapsedMillis > 0) {
+                dto.setFilesPerSecond(dto.getScannedFiles() * 1000.0 / elapsedMillis);
+                dto.setBytesPerSecond(dto.getScannedBytes() * 1000.0 / elapsedMillis);
+            }
+            dto.setErrorMessage(errorMessage);
+            return dto;
+        }
+
+        // 遍历一个目录：子目录与文件分组后并行处理。任务只在 ForkJoinPool 中执行，不会被序列化
+        @SuppressWarnings("serial")
+        private final class WalkTask extends RecursiveAction {
+            final Path dir;
+
+            WalkTask(Path dir) {
+                this.dir = dir;
+            }
+
+            @Override
+            protected void compute() {
+                if (cancelled) return;
+                List<RecursiveAction> tasks = new ArrayList<>();
+                List<Path> files = new ArrayList<>(FILES_PER_TASK);
+                try {
+                    if (watchService != null) {
+                        watchKeys.put(dir.register(watchService,
+                                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                    }
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                        for (Path entry : stream) {
+                            if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                                tasks.add(new WalkTask(entry));
+                            } else if (accepts(entry)) {
+                                files.add(entry);
+                                if (files.size() == FILES_PER_TASK) {
+                                    tasks.add(new HashTask(files));
+                                    files = new ArrayList<>(FILES_PER_TASK);
+                                }
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    log.warn("遍历导入目录失败: {}", dir, e);
+                }
+                if (!files.isEmpty()) {
+                    tasks.add(new HashTask(files));
+                }
+                invokeAll(tasks);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private final class HashTask extends RecursiveAction {
+            final List<Path> files;
+
+            HashTask(List<Path> files) {
+                this.files = files;
+            }
+
+            @Override
+            protected void compute() {
+                for (Path file : files) {
+                    if (cancelled) return;
+                    hash(file);
+                }
+            }
+        }
+    }
+}
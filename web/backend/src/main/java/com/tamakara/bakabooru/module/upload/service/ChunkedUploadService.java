@@ -0,0 +1,222 @@
+package com.tamakara.bakabooru.module.upload.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import com.tamakara.bakabooru.module.upload.dto.UploadSessionDto;
+import com.tamakara.bakabooru.module.upload.dto.UploadSessionRequestDto;
+import com.tamakara.bakabooru.module.upload.model.UploadSession;
+import com.tamakara.bakabooru.module.upload.model.UploadTask;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 可续传的分块上传：创建会话后分块按偏移量写入（可乱序、可并行），
+ * 连接中断后查询已接收的区间只补传缺失部分，全部接收后提交进入常规处理流程。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 超过该时间没有写入的会话视为放弃
+    private static final long SESSION_TIMEOUT_MILLIS = Duration.ofHours(24).toMillis();
+
+    private final AppPaths appPaths;
+    private final UploadQueueService uploadQueueService;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public UploadTask createSession(UploadSessionRequestDto request) {
+        UploadTask task;
+        try {
+            task = uploadQueueService.createUploadingTask(request.getFilename(), request.getSize(),
+                    request.getEnableTagging(), request.getHash());
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        // 重复的图片不创建会话，客户端无需上传内容
+        if (task.getStatus() != UploadTask.UploadStatus.UPLOADING) {
+            return task;
+        }
+
+        Path pendingFile = appPaths.getPendingDir().resolve(task.getId()).normalize().toAbsolutePath();
+        try {
+            sessions.put(task.getId(), UploadSession.open(task.getId(), request.getSize(), pendingFile));
+        } catch (IOException e) {
+            uploadQueueService.markFailed(task.getId(), "创建上传会话失败.");
+            throw new RuntimeException("创建上传会话失败.", e);
+        }
+        return task;
+    }
+
+    /**
+     * 写入从 offset 开始的分块。连接中途断开时已写入的部分仍然记为已接收。
+     */
+    public UploadSessionDto writeChunk(String id, long offset, long length, InputStream in) {
+        UploadSession session = getSession(id);
+        session.touch();
+        if (offset < 0 || offset >= session.getSize()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "分块偏移量超出文件范围");
+        }
+        long limit = session.getSize() - offset;
+        if (length > limit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "分块超出文件大小");
+        }
+        // 响应丢失后的重传，内容已经写入
+        if (length > 0 && session.covers(offset, offset + length)) {
+            return toDto(session);
+        }
+        // 提交时会关闭文件，此后的分块不能再写入
+        if (!session.beginWrite()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "上传会话正在提交");
+        }
+
+        try {
+            long position = offset;
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (position - offset + read > limit) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "分块超出文件大小");
+                    }
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        position += session.getChannel().write(data, position);
+                    }
+                }
+            } finally {
+                session.addRange(offset, position);
+                uploadQueueService.updateUploadedBytes(id, session.getReceivedBytes());
+            }
+            session.advanceHash();
+        } catch (ClosedChannelException e) {
+            // 写入期间会话被取消或过期
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "上传会话不存在");
+        } catch (IOException e) {
+            throw new RuntimeException("分块写入失败.", e);
+        } finally {
+            session.endWrite();
+        }
+        return toDto(session);
+    }
+
+    public UploadSessionDto getSessionStatus(String id) {
+        return toDto(getSession(id));
+    }
+
+    /**
+     * 所有分块接收完毕后提交，计算剩余哈希并开始处理。
+     */
+    public UploadTask commit(String id) {
+        UploadSession session = getSession(id);
+        if (!session.isComplete()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "分块未全部上传");
+        }
+        // 流水线已满时返回 429，会话保留，客户端稍后重新提交
+        uploadQueueService.reserve();
+        boolean submitted = false;
+        try {
+            if (!session.beginCommit()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "仍有分块正在写入");
+            }
+            // 同一会话只能提交一次
+            if (!sessions.remove(id, session)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "上传会话不存在");
+            }
+
+            String hash;
+            try {
+                hash = session.finish();
+            } catch (IOException e) {
+                uploadQueueService.markFailed(id, "计算文件哈希失败.");
+                throw new RuntimeException("计算文件哈希失败.", e);
+            }
+
+            UploadTask task = uploadQueueService.markUploaded(id, hash);
+            if (task == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "上传任务不存在");
+            }
+            if (task.getStatus() == UploadTask.UploadStatus.FAILED) {
+                discard(session);
+                return task;
+            }
+            uploadQueueService.submitTask(id);
+            submitted = true;
+            return task;
+        } finally {
+            if (!submitted) {
+                uploadQueueService.release();
+            }
+        }
+    }
+
+    public void abort(String id) {
+        UploadSession session = sessions.remove(id);
+        if (session != null) {
+            discard(session);
+        }
+        uploadQueueService.deleteTask(id);
+    }
+
+    // 清理超时或任务已被删除的会话
+    @Scheduled(fixedDelay = 10 * 60 * 1000)
+    public void expireSessions() {
+        long deadline = System.currentTimeMillis() - SESSION_TIMEOUT_MILLIS;
+        sessions.forEach((id, session) -> {
+            boolean deleted = uploadQueueService.getTask(id) == null;
+            if ((deleted || session.getLastActive() < deadline) && sessions.remove(id, session)) {
+                discard(session);
+                uploadQueueService.markFailed(id, "上传会话已过期");
+                log.info("上传会话已过期,taskId:" + id);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.values().forEach(UploadSession::close);
+    }
+
+    private UploadSession getSession(String id) {
+        UploadSession session = sessions.get(id);
+        if (session == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "上传会话不存在");
+        }
+        return session;
+    }
+
+    private void discard(UploadSession session) {
+        session.close();
+        try {
+            Files.deleteIfExists(session.getFile());
+        } catch (IOException e) {
+            log.warn("删除待处理文件失败: {}", session.getFile(), e);
+        }
+    }
+
+    private UploadSessionDto toDto(UploadSession session) {
+        UploadSessionDto dto = new UploadSessionDto();
+        dto.setId(session.getId());
+        dto.setSize(session.getSize());
+        dto.setReceivedBytes(session.getReceivedBytes());
+        dto.setReceived(session.getRanges());
+        return dto;
+    }
+}
@@ -0,0 +1,323 @@
+package com.tamakara.bakabooru.module.upload.service;
+
+import com.tamakara.bakabooru.module.ai.service.AiTagBatchService;
+import com.tamakara.bakabooru.module.file.service.StorageService;
+import com.tamakara.bakabooru.module.file.service.ThumbnailService;
+import com.tamakara.bakabooru.module.gallery.entity.Image;
+import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
+import com.tamakara.bakabooru.module.gallery.service.SearchCacheService;
+import com.tamakara.bakabooru.module.system.service.SystemSettingService;
+import com.tamakara.bakabooru.module.tag.entity.Tag;
+import com.tamakara.bakabooru.module.tag.service.TagIndexService;
+import com.tamakara.bakabooru.module.tag.service.TagService;
+import com.tamakara.bakabooru.module.upload.model.UploadJob;
+import com.tamakara.bakabooru.module.upload.model.UploadTask;
+import com.tamakara.bakabooru.utils.ImageHeaderUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.Dimension;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上传处理流水线：校验 -> 元数据（尺寸、缩略图）-> AI 标注 -> 入库，
+ * 每个阶段有独立的有界队列与工作线程，线程数由 upload.concurrency 决定（入库阶段单线程，SQLite 只有一个写入者）。
+ * 下游队列满时上游工作线程阻塞等待，入口没有空位时返回 429。
+ * 每个阶段的排队与处理耗时记录在任务的 stageTimings 中。
+ * 停止时正在处理或等待入队的任务保持原状态和待处理文件，下次启动时由任务日志恢复。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UploadPipelineService {
+
+    // 每个工作线程对应的队列长度
+    private static final int QUEUE_PER_WORKER = 16;
+
+    private final StorageService storageService;
+    private final ThumbnailService thumbnailService;
+    private final TagService tagService;
+    private final ImageRepository imageRepository;
+    private final SystemSettingService systemSettingService;
+    private final TagIndexService tagIndexService;
+    private final SearchCacheService searchCacheService;
+    private final AiTagBatchService aiTagBatchService;
+    private final UploadTaskJournal uploadTaskJournal;
+    private final MeterRegistry meterRegistry;
+
+    private Stage validateStage;
+    private Stage metadataStage;
+    private Stage taggingStage;
+    private Stage persistStage;
+    private final List<Stage> stages = new ArrayList<>();
+
+    // 入口配额，与校验阶段的队列长度相同，持有配额的任务入队不会失败
+    private Semaphore admission;
+
+    private volatile boolean stopping;
+
+    @PostConstruct
+    public void start() {
+        int concurrency = Math.max(1, systemSettingService.getIntSetting("upload.concurrency", 3));
+        persistStage = new Stage("persist", 1, this::persist);
+        // 打标请求在 AiTagBatchService 中合并，工作线程数不少于批次大小才能凑满批次
+        taggingStage = new Stage("tagging", Math.max(concurrency, aiTagBatchService.getBatchSize()), this::tag);
+        metadataStage = new Stage("metadata", concurrency, this::readMetadata);
+        validateStage = new Stage("validate", concurrency, this::validate);
+        admission = new Semaphore(validateStage.queue.remainingCapacity());
+
+        stages.forEach(Stage::start);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        stages.forEach(Stage::stop);
+    }
+
+    /**
+     * 预留入口配额，流水线已满时返回 429。预留成功后必须调用 submit 或 release。
+     */
+    public void reserve() {
+        if (!admission.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "上传队列已满，请稍后重试");
+        }
+    }
+
+    public void release() {
+        admission.release();
+    }
+
+    /**
+     * 等待入口配额，用于重启后恢复的任务，不向客户端返回 429。
+     */
+    public void awaitReserve() throws InterruptedException {
+        admission.acquire();
+    }
+
+    /**
+     * 提交已写入待处理文件的任务，调用前需先 reserve。
+     */
+    public void submit(UploadTask task) {
+        validateStage.enqueue(new UploadJob(task));
+    }
+
+    // 1. 检查重复
+    private Stage validate(UploadJob job) {
+        UploadTask task = job.getTask();
+        updateStatus(task, UploadTask.UploadStatus.PROCESSING);
+        imageRepository.findByHash(task.getHash()).ifPresent(existing -> {
+            throw new RuntimeException("重复的图片: " + existing.getId());
+        });
+        return metadataStage;
+    }
+
+    // 2. 读取尺寸并生成各尺寸缩略图
+    private Stage readMetadata(UploadJob job) {
+        UploadTask task = job.getTask();
+        Path filePath = storageService.getPendingImagePath(task.getId());
+        Image image = job.getImage();
+        try {
+            // 只读取文件头，无法识别的格式尺寸留空
+            Dimension dimension = ImageHeaderUtils.readDimensions(filePath);
+            if (dimension != null) {
+                image.setWidth(dimension.width);
+                image.setHeight(dimension.height);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("无法获取图片元数据", e);
+        }
+
+        // 失败时不影响上传，浏览时会再按需生成
+        try {
+            thumbnailService.generateVariants(task.getHash(), filePath);
+        } catch (Exception e) {
+            log.warn("生成缩略图失败,taskId:" + task.getId(), e);
+        }
+        return task.isEnableTagging() ? taggingStage : persistStage;
+    }
+
+    // 3. 生成标签
+    private Stage tag(UploadJob job) {
+        UploadTask task = job.getTask();
+        updateStatus(task, UploadTask.UploadStatus.TAGGING);
+        try {
+            // 调用 AIService 获取标签
+            job.setTagData(tagService.tagImage("temp/pending/" + task.getId()));
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage());
+        }
+        return persistStage;
+    }
+
+    // 4. 保存
+    private Stage persist(UploadJob job) {
+        UploadTask task = job.getTask();
+        updateStatus(task, UploadTask.UploadStatus.SAVING);
+
+        // 将 TagData 转换为实体，只在单线程的入库阶段写入 tags 表
+        Set<Tag> tags = new HashSet<>();
+        job.getTagData().forEach((tagType, tagNames) -> {
+            for (String tagName : tagNames) {
+                tags.add(tagService.findOrCreateTag(tagName, tagType));
+            }
+        });
+
+        Image image = job.getImage();
+        String originalFilename = task.getFilename();
+        String title = originalFilename;
+        String extension = "";
+        int dotIndex = originalFilename.lastIndexOf('.');
+        if (dotIndex != -1) {
+            title = originalFilename.substring(0, dotIndex);
+            extension = originalFilename.substring(dotIndex + 1);
+        }
+
+        image.setTitle(title);
+        image.setFileName(originalFilename);
+        image.setExtension(extension);
+        image.setSize(task.getSize());
+        image.setHash(task.getHash());
+        image.setTags(tags);
+        image.setCreatedAt(LocalDateTime.now());
+        image.setUpdatedAt(LocalDateTime.now());
+
+        storageService.storeImage(task.getId(), task.getHash());
+        imageRepository.save(image);
+        // 记录已提交，待处理文件不再需要
+        storageService.deletePendingImage(task.getId());
+        tagIndexService.addImage(image.getId(), tags.stream().map(Tag::getName).toList());
+        searchCacheService.invalidate();
+
+        updateStatus(task, UploadTask.UploadStatus.COMPLETED);
+        return null;
+    }
+
+    private void updateStatus(UploadTask task, UploadTask.UploadStatus status) {
+        task.setStatus(status);
+        task.setUpdatedAt(LocalDateTime.now());
+        uploadTaskJournal.record(task);
+    }
+
+    @FunctionalInterface
+    private interface StageHandler {
+        // 返回下一阶段，流程结束时返回 null
+        Stage handle(UploadJob job);
+    }
+
+    private final class Stage {
+        final String name;
+        final BlockingQueue<UploadJob> queue;
+        final StageHandler handler;
+        final List<Thread> workers = new ArrayList<>();
+        final Timer timer;
+
+        Stage(String name, int workers, StageHandler handler) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER);
+            this.handler = handler;
+            this.timer = Timer.builder("upload.stage.duration").tag("stage", name).register(meterRegistry);
+            Gauge.builder("upload.stage.queue", queue, BlockingQueue::size).tag("stage", name).register(meterRegistry);
+            for (int i = 0; i < workers; i++) {
+                Thread thread = new Thread(this::run, "upload-" + name + "-" + (i + 1));
+                thread.setDaemon(true);
+                this.workers.add(thread);
+            }
+            stages.add(this);
+        }
+
+        void start() {
+            workers.forEach(Thread::start);
+        }
+
+        void stop() {
+            workers.forEach(Thread::interrupt);
+        }
+
+        // 队列满时阻塞，把压力传回上游
+        void enqueue(UploadJob job) {
+            job.setEnqueuedAt(System.nanoTime());
+            if (!queue.offer(job)) {
+                try {
+                    queue.put(job);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    abandon(job);
+                }
+            }
+        }
+
+        void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                UploadJob job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (this == validateStage) {
+                    admission.release();
+                }
+
+                long start = System.nanoTime();
+                Map<String, Long> timings = job.getTask().getStageTimings();
+                timings.put(name + ".queue", TimeUnit.NANOSECONDS.toMillis(start - job.getEnqueuedAt()));
+                Stage following;
+                try {
+                    following = handler.handle(job);
+                } catch (Throwable e) {
+                    // 停止时处理被中断，不是任务本身的错误
+                    if (stopping) {
+                        abandon(job);
+                        return;
+                    }
+                    // Error 也只让当前任务失败，工作线程继续处理后续任务
+                    fail(job, e);
+                    continue;
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    timer.record(elapsed, TimeUnit.NANOSECONDS);
+                    timings.put(name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                }
+                if (following != null) {
+                    following.enqueue(job);
+                }
+            }
+        }
+
+        private void fail(UploadJob job, Throwable e) {
+            UploadTask task = job.getTask();
+            log.error("任务处理失败,taskId:" + task.getId() + ",阶段:" + name, e);
+            try {
+                task.setErrorMessage(e.getMessage());
+                updateStatus(task, UploadTask.UploadStatus.FAILED);
+                storageService.deletePendingImage(task.getId());
+            } catch (RuntimeException cleanup) {
+                log.warn("标记任务失败时出错,taskId:" + task.getId(), cleanup);
+            }
+        }
+
+        // 不修改状态也不删除待处理文件，重启后由 UploadQueueService.recover 重新排队
+        private void abandon(UploadJob job) {
+            log.info("服务停止，任务留待重启后恢复,taskId:{},阶段:{}", job.getTask().getId(), name);
+        }
+    }
+}
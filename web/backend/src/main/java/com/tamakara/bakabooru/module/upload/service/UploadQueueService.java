@@ -1,84 +1,283 @@
 package com.tamakara.bakabooru.module.upload.service;
 
-import com.drew.imaging.ImageMetadataReader;
-import com.drew.metadata.Metadata;
-import com.drew.metadata.jpeg.JpegDirectory;
+import com.tamakara.bakabooru.config.AppPaths;
 import com.tamakara.bakabooru.module.file.service.StorageService;
-import com.tamakara.bakabooru.module.tag.service.TagService;
 import com.tamakara.bakabooru.utils.FileUtils;
 import com.tamakara.bakabooru.module.gallery.entity.Image;
 import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
-import com.tamakara.bakabooru.module.tag.entity.Tag;
-import com.tamakara.bakabooru.module.tag.repository.TagRepository;
 import com.tamakara.bakabooru.module.system.service.SystemSettingService;
 import com.tamakara.bakabooru.module.upload.model.UploadTask;
 import com.tamakara.bakabooru.module.upload.model.UploadTaskStore;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class UploadQueueService {
 
+    private final AppPaths appPaths;
     private final StorageService storageService;
-    private final TagService tagService;
     private final ImageRepository imageRepository;
-    private final TagRepository tagRepository;
     private final SystemSettingService systemSettingService;
+    private final UploadPipelineService uploadPipelineService;
+    private final UploadTaskJournal uploadTaskJournal;
 
-    // 内存存储任务队列
+    // 单次预检最多的哈希数
+    private static final int MAX_CHECK_HASHES = 10000;
+
+    // IN 查询每批的参数个数，低于 SQLite 的参数上限
+    private static final int HASH_QUERY_BATCH = 500;
+
+    // 已完成或失败的任务在日志中保留的天数
+    private static final int FINISHED_RETENTION_DAYS = 7;
+
+    // 内存存储任务队列，由任务日志持久化，列表查询只读内存
     private final UploadTaskStore taskStore = new UploadTaskStore();
 
+    /**
+     * 启动时从任务日志恢复任务列表：仍在等待或处理中且待处理文件还在的任务重新排队，
+     * 其余未完成的任务（包括无法续传的分块上传）标记为失败，并删除不属于任何待恢复任务的待处理文件。
+     * 在 Web 服务开始接收请求之前执行，不会误删新上传的文件。
+     */
+    @PostConstruct
+    public void recover() {
+        LocalDateTime expireBefore = LocalDateTime.now().minusDays(FINISHED_RETENTION_DAYS);
+        List<UploadTask> requeue = new ArrayList<>();
+        Set<String> keep = new HashSet<>();
+
+        for (UploadTask task : uploadTaskJournal.loadAll()) {
+            boolean finished = task.getStatus() == UploadTask.UploadStatus.COMPLETED
+                    || task.getStatus() == UploadTask.UploadStatus.FAILED;
+            if (finished && task.getUpdatedAt() != null && task.getUpdatedAt().isBefore(expireBefore)) {
+                uploadTaskJournal.delete(task.getId());
+                continue;
+            }
+
+            switch (task.getStatus()) {
+                case PENDING, PROCESSING, TAGGING, SAVING -> {
+                    // 入库已提交但完成状态尚未写入日志
+                    if (task.getStatus() == UploadTask.UploadStatus.SAVING && task.getHash() != null
+                            && imageRepository.findByHash(task.getHash()).isPresent()) {
+                        updateStatus(task, UploadTask.UploadStatus.COMPLETED);
+                    } else if (task.getHash() != null && Files.exists(storageService.getPendingImagePath(task.getId()))) {
+                        updateStatus(task, UploadTask.UploadStatus.PENDING);
+                        requeue.add(task);
+                        keep.add(task.getId());
+                    } else {
+                        task.setErrorMessage("服务重启时待处理文件已丢失");
+                        updateStatus(task, UploadTask.UploadStatus.FAILED);
+                    }
+                }
+                case UPLOADING -> {
+                    task.setErrorMessage("服务重启，上传会话已失效，请重新上传");
+                    updateStatus(task, UploadTask.UploadStatus.FAILED);
+                }
+                default -> {
+                }
+            }
+            taskStore.addTask(task);
+        }
+
+        Path pendingDir = appPaths.getPendingDir();
+        if (Files.isDirectory(pendingDir)) {
+            try (Stream<Path> files = Files.list(pendingDir)) {
+                files.filter(path -> !keep.contains(path.getFileName().toString()))
+                        .forEach(path -> storageService.deletePendingImage(path.getFileName().toString()));
+            } catch (IOException e) {
+                log.warn("清理待处理文件失败", e);
+            }
+        }
+
+        if (requeue.isEmpty()) return;
+        log.info("恢复上传任务: {} 个", requeue.size());
+        // 恢复的任务可能超过流水线入口容量，在后台线程中等待配额依次提交
+        Thread thread = new Thread(() -> {
+            for (UploadTask task : requeue) {
+                try {
+                    uploadPipelineService.awaitReserve();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                uploadPipelineService.submit(task);
+            }
+        }, "upload-recovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     public UploadTask createTask(MultipartFile file, Boolean enableTagging) {
-        String taskId = UUID.randomUUID().toString();
+        // 流水线已满时直接返回 429，不再写入文件
+        uploadPipelineService.reserve();
+        boolean submitted = false;
+        try {
+            UploadTask task = newTask(file.getOriginalFilename(), file.getSize(), enableTagging);
+            String taskId = task.getId();
 
-        UploadTask task = new UploadTask();
-        task.setId(taskId);
-        task.setFilename(file.getOriginalFilename());
-        task.setSize(file.getSize());
-        task.setCreatedAt(LocalDateTime.now());
-        task.setUpdatedAt(LocalDateTime.now());
-        task.setHash(FileUtils.calculateHash(file));
-        task.setEnableTagging(enableTagging != null && enableTagging);
+            task.setStatus(UploadTask.UploadStatus.PENDING);
+            taskStore.addTask(task);
+            uploadTaskJournal.record(task);
+
+            try {
+                // 验证文件
+                validateFile(file.getOriginalFilename(), file.getSize());
+                // 临时存储文件，同时计算哈希
+                task.setHash(storageService.storePendingImage(taskId, file));
+            } catch (Exception e) {
+                log.error("任务处理失败,taskId:" + taskId, e);
+                task.setErrorMessage(e.getMessage());
+                updateStatus(task, UploadTask.UploadStatus.FAILED);
+                return task;
+            }
+            uploadTaskJournal.record(task);
+
+            // 后续处理在流水线中异步进行
+            uploadPipelineService.submit(task);
+            submitted = true;
+            return task;
+        } finally {
+            // 没有提交到流水线时归还配额
+            if (!submitted) {
+                uploadPipelineService.release();
+            }
+        }
+    }
+
+    /**
+     * 上传前预检：返回给定 SHA-256 哈希中图库已有或正在处理的部分，客户端可跳过这些文件。
+     * 任务只计入文件已上传、正在流水线中处理的；已完成的任务以图库为准（图片可能已被删除），
+     * 上传中的任务只声明了哈希，可能已被放弃。
+     */
+    public Set<String> findExistingHashes(Collection<String> hashes) {
+        if (hashes.size() > MAX_CHECK_HASHES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "单次最多检查 " + MAX_CHECK_HASHES + " 个哈希");
+        }
+        List<String> requested = hashes.stream()
+                .filter(Objects::nonNull)
+                .map(hash -> hash.trim().toLowerCase(Locale.ROOT))
+                .distinct()
+                .toList();
+
+        Set<String> existing = new HashSet<>();
+        for (int i = 0; i < requested.size(); i += HASH_QUERY_BATCH) {
+            existing.addAll(imageRepository.findExistingHashes(
+                    requested.subList(i, Math.min(i + HASH_QUERY_BATCH, requested.size()))));
+        }
+
+        // 已上传但尚未入库的任务
+        Set<String> remaining = new HashSet<>(requested);
+        remaining.removeAll(existing);
+        if (!remaining.isEmpty()) {
+            for (UploadTask task : taskStore.getAllTasks()) {
+                if (task.getHash() != null && isProcessing(task.getStatus())
+                        && remaining.contains(task.getHash())) {
+                    existing.add(task.getHash());
+                }
+            }
+        }
+        return existing;
+    }
 
-        task.setStatus(UploadTask.UploadStatus.PENDING);
+    private static boolean isProcessing(UploadTask.UploadStatus status) {
+        return switch (status) {
+            case PENDING, PROCESSING, TAGGING, SAVING -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * 创建分块上传任务，状态为 UPLOADING，文件验证失败时抛出异常。
+     * 客户端提供的哈希已存在时直接返回失败的重复任务，不需要上传文件内容。
+     */
+    public UploadTask createUploadingTask(String filename, long size, Boolean enableTagging, String hash) {
+        if (size <= 0) {
+            throw new RuntimeException("文件为空.");
+        }
+        validateFile(filename, size);
+        UploadTask task = newTask(filename, size, enableTagging);
+        task.setStatus(UploadTask.UploadStatus.UPLOADING);
+
+        if (hash != null) {
+            task.setHash(hash.trim().toLowerCase(Locale.ROOT));
+            Optional<Image> existingImage = imageRepository.findByHash(task.getHash());
+            if (existingImage.isPresent()) {
+                task.setStatus(UploadTask.UploadStatus.FAILED);
+                task.setErrorMessage("重复的图片: " + existingImage.get().getId());
+            }
+        }
         taskStore.addTask(task);
+        uploadTaskJournal.record(task);
+        return task;
+    }
 
-        try {
-            // 验证文件
-            validateFile(file);
-            // 临时存储文件
-            storageService.storePendingImage(taskId, file);
-            // 异步开始处理
-            processTask(taskId);
-            log.info("任务处理成功,taskId:" + taskId);
-        } catch (Exception e) {
-            log.error("任务处理失败,taskId:" + taskId, e);
-            task.setStatus(UploadTask.UploadStatus.FAILED);
-            task.setErrorMessage(e.getMessage());
+    /**
+     * 分块上传进度。
+     */
+    public void updateUploadedBytes(String taskId, long uploadedBytes) {
+        UploadTask task = taskStore.getTask(taskId);
+        if (task == null) return;
+        task.setUploadedBytes(uploadedBytes);
+        task.setUpdatedAt(LocalDateTime.now());
+        uploadTaskJournal.record(task);
+    }
+
+    /**
+     * 分块上传完成，待处理文件已写入，等待 submitTask 提交处理。
+     */
+    public UploadTask markUploaded(String taskId, String hash) {
+        UploadTask task = taskStore.getTask(taskId);
+        if (task == null) return null;
+        // 与创建会话时声明的哈希不一致说明分块内容有误
+        if (task.getHash() != null && !task.getHash().equals(hash)) {
+            task.setErrorMessage("文件哈希与声明的不一致");
+            updateStatus(task, UploadTask.UploadStatus.FAILED);
+            return task;
         }
+        task.setHash(hash);
+        task.setUploadedBytes(task.getSize());
+        updateStatus(task, UploadTask.UploadStatus.PENDING);
+        return task;
+    }
 
+    public void markFailed(String taskId, String errorMessage) {
+        UploadTask task = taskStore.getTask(taskId);
+        if (task == null) return;
+        task.setErrorMessage(errorMessage);
+        updateStatus(task, UploadTask.UploadStatus.FAILED);
+    }
+
+    private UploadTask newTask(String filename, long size, Boolean enableTagging) {
+        UploadTask task = new UploadTask();
+        task.setId(UUID.randomUUID().toString());
+        task.setFilename(filename);
+        task.setSize(size);
+        task.setCreatedAt(LocalDateTime.now());
+        task.setUpdatedAt(LocalDateTime.now());
+        task.setEnableTagging(enableTagging != null && enableTagging);
         return task;
     }
 
-    private void validateFile(MultipartFile file) {
+    private void validateFile(String filename, long size) {
         // 检查大小
         long maxSize = systemSettingService.getLongSetting("upload.max-file-size", 52428800); // 默认 50MB
-        if (file.getSize() > maxSize) {
+        if (size > maxSize) {
             throw new RuntimeException("文件过大。最大允许: " + maxSize);
         }
 
         // 检查扩展名
         String allowedExtensions = systemSettingService.getSetting("upload.allowed-extensions", "jpg,png,webp,gif,jpeg");
-        String filename = file.getOriginalFilename();
         if (filename != null) {
             String ext = FileUtils.getExtension(filename).toLowerCase().replace(".", "");
             if (!Arrays.asList(allowedExtensions.split(",")).contains(ext)) {
@@ -87,94 +286,33 @@ public class UploadQueueService {
         }
     }
 
-    @Async("uploadExecutor")
-    public void processTask(String taskId) {
+    /**
+     * 把已写入待处理文件的任务提交到处理流水线，调用前需先通过 reserve 预留配额。
+     */
+    public void submitTask(String taskId) {
         UploadTask task = taskStore.getTask(taskId);
-        if (task == null) return;
-
-        updateStatus(task, UploadTask.UploadStatus.PROCESSING);
-
-        String hash = task.getHash();
-
-        // 1. 检查重复
-        Optional<Image> existingImage = imageRepository.findByHash(hash);
-        if (existingImage.isPresent()) {
-            throw new RuntimeException("重复的图片: " + existingImage.get().getId());
-        }
-
-        Set<Tag> tags = new HashSet<>();
-
-        // 2. 生成标签
-        if (task.isEnableTagging()) {
-            updateStatus(task, UploadTask.UploadStatus.TAGGING);
-            try {
-                // 调用 AIService 获取标签
-                Map<String, List<String>> tagData = tagService.tagImage("temp/pending/" + taskId);
-
-                // 将 TagData 转换为实体
-                for (String tagType : tagData.keySet()) {
-                    for (String tagName : tagData.get(tagType)) {
-                        Tag tag = tagRepository.findByName(tagName)
-                                .orElseGet(() -> {
-                                    Tag newTag = new Tag();
-                                    newTag.setName(tagName);
-                                    newTag.setType(tagType);
-                                    return tagRepository.save(newTag);
-                                });
-                        tags.add(tag);
-                    }
-                }
-            } catch (Exception e) {
-                throw new RuntimeException(e.getMessage());
-            }
-        }
-
-        // 3. 保存
-        updateStatus(task, UploadTask.UploadStatus.SAVING);
-
-        Image image = new Image();
-
-        String originalFilename = task.getFilename();
-        String title = originalFilename;
-        String extension = "";
-        int dotIndex = originalFilename.lastIndexOf('.');
-        if (dotIndex != -1) {
-            title = originalFilename.substring(0, dotIndex);
-            extension = originalFilename.substring(dotIndex + 1);
-        }
-
-        image.setTitle(title);
-        image.setFileName(originalFilename);
-        image.setExtension(extension);
-
-        image.setSize(task.getSize());
-        image.setHash(hash);
-        image.setTags(tags);
-        image.setCreatedAt(LocalDateTime.now());
-        image.setUpdatedAt(LocalDateTime.now());
-
-        // 获取尺寸
-        Path filePath = storageService.getPendingImagePath(taskId);
-        try {
-            Metadata metadata = ImageMetadataReader.readMetadata(filePath.toFile());
-            JpegDirectory directory = metadata.getFirstDirectoryOfType(JpegDirectory.class);
-            if (directory != null) {
-                image.setWidth(directory.getInt(JpegDirectory.TAG_IMAGE_WIDTH));
-                image.setHeight(directory.getInt(JpegDirectory.TAG_IMAGE_HEIGHT));
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("无法获取图片元数据", e);
+        if (task == null) {
+            uploadPipelineService.release();
+            return;
         }
+        uploadPipelineService.submit(task);
+    }
 
-        storageService.storeImage(taskId, hash);
-        imageRepository.save(image);
+    /**
+     * 预留流水线配额，队列已满时返回 429。
+     */
+    public void reserve() {
+        uploadPipelineService.reserve();
+    }
 
-        updateStatus(task, UploadTask.UploadStatus.COMPLETED);
+    public void release() {
+        uploadPipelineService.release();
     }
 
     private void updateStatus(UploadTask task, UploadTask.UploadStatus status) {
         task.setStatus(status);
         task.setUpdatedAt(LocalDateTime.now());
+        uploadTaskJournal.record(task);
     }
 
 
@@ -188,9 +326,10 @@ public class UploadQueueService {
 
     public void deleteTask(String id) {
         taskStore.removeTask(id);
+        uploadTaskJournal.delete(id);
     }
 
     public void clearTasks() {
-        taskStore.clearCompletedOrFailed();
+        taskStore.clearCompletedOrFailed().forEach(uploadTaskJournal::delete);
     }
 }
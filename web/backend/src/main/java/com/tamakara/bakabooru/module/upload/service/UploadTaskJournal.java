@@ -0,0 +1,147 @@
+package com.tamakara.bakabooru.module.upload.service;
+
+import com.tamakara.bakabooru.module.upload.model.UploadTask;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 上传任务日志：任务状态变化时只在内存中标记，定时把变化的任务批量写入 upload_tasks 表，
+ * 每批在一个小事务中完成。任务列表始终由内存提供，轮询不会访问数据库。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UploadTaskJournal {
+
+    // 每个事务最多写入的任务数
+    private static final int BATCH_SIZE = 200;
+
+    private static final String UPSERT = "INSERT OR REPLACE INTO upload_tasks "
+            + "(id, filename, size, uploaded_bytes, status, error_message, hash, enable_tagging, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // 待写入的任务与待删除的任务ID
+    private final Map<String, UploadTask> dirty = new ConcurrentHashMap<>();
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 记录任务的最新状态，稍后批量写入。已从任务列表删除的任务不再记录，重启后不会重新出现。
+     */
+    public void record(UploadTask task) {
+        if (task.isRemoved()) return;
+        dirty.put(task.getId(), task);
+        // 与删除并发时撤销刚写入的标记：删除先设置 removed 再调用 delete
+        if (task.isRemoved()) {
+            dirty.remove(task.getId(), task);
+        }
+    }
+
+    /**
+     * 删除任务日志。任务仍在内存中时需先从任务列表移除。
+     */
+    public void delete(String id) {
+        dirty.remove(id);
+        deleted.add(id);
+    }
+
+    /**
+     * 读取所有任务，按创建时间从旧到新。
+     */
+    public List<UploadTask> loadAll() {
+        return jdbcTemplate.query("SELECT id, filename, size, uploaded_bytes, status, error_message, hash, "
+                + "enable_tagging, created_at, updated_at FROM upload_tasks ORDER BY created_at", (rs, i) -> {
+            UploadTask task = new UploadTask();
+            task.setId(rs.getString(1));
+            task.setFilename(rs.getString(2));
+            task.setSize(rs.getLong(3));
+            task.setUploadedBytes(rs.getLong(4));
+            task.setStatus(UploadTask.UploadStatus.valueOf(rs.getString(5)));
+            task.setErrorMessage(rs.getString(6));
+            task.setHash(rs.getString(7));
+            task.setEnableTagging(rs.getInt(8) != 0);
+            task.setCreatedAt(parse(rs.getString(9)));
+            task.setUpdatedAt(parse(rs.getString(10)));
+            return task;
+        });
+    }
+
+    @Scheduled(fixedDelay = 500)
+    public void flush() {
+        while (!dirty.isEmpty() || !deleted.isEmpty()) {
+            List<UploadTask> upserts = new ArrayList<>();
+            Iterator<Map.Entry<String, UploadTask>> it = dirty.entrySet().iterator();
+            while (it.hasNext() && upserts.size() < BATCH_SIZE) {
+                Map.Entry<String, UploadTask> entry = it.next();
+                // 写入期间再次变化的任务会重新标记，下一批写入
+                if (dirty.remove(entry.getKey(), entry.getValue())) {
+                    upserts.add(entry.getValue());
+                }
+            }
+            List<Object[]> deletes = new ArrayList<>();
+            Iterator<String> ids = deleted.iterator();
+            while (ids.hasNext() && deletes.size() < BATCH_SIZE) {
+                String id = ids.next();
+                if (deleted.remove(id)) {
+                    deletes.add(new Object[]{id});
+                }
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (!upserts.isEmpty()) {
+                        jdbcTemplate.batchUpdate(UPSERT, upserts.stream().map(UploadTaskJournal::toRow).toList());
+                    }
+                    if (!deletes.isEmpty()) {
+                        jdbcTemplate.batchUpdate("DELETE FROM upload_tasks WHERE id = ?", deletes);
+                    }
+                });
+            } catch (Exception e) {
+                // 写入失败的任务重新标记，下次再写
+                upserts.forEach(task -> dirty.putIfAbsent(task.getId(), task));
+                deletes.forEach(row -> deleted.add((String) row[0]));
+                log.warn("写入上传任务日志失败", e);
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private static Object[] toRow(UploadTask task) {
+        return new Object[]{
+                task.getId(),
+                task.getFilename(),
+                task.getSize(),
+                task.getUploadedBytes(),
+                task.getStatus().name(),
+                task.getErrorMessage(),
+                task.getHash(),
+                task.isEnableTagging() ? 1 : 0,
+                task.getCreatedAt() != null ? task.getCreatedAt().toString() : null,
+                task.getUpdatedAt() != null ? task.getUpdatedAt().toString() : null
+        };
+    }
+
+    private static LocalDateTime parse(String value) {
+        return value != null ? LocalDateTime.parse(value) : null;
+    }
+}
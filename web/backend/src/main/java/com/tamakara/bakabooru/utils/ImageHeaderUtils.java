@@ -0,0 +1,103 @@
+package com.tamakara.bakabooru.utils;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 只读取文件头获取图片尺寸，不解码像素也不解析其余元数据。
+ * 支持 PNG（IHDR）、GIF（逻辑屏幕描述符）、WebP（VP8 / VP8L / VP8X）与 JPEG（SOFn）。
+ */
+public class ImageHeaderUtils {
+
+    // 足以覆盖 PNG、GIF 与 WebP 的尺寸字段
+    private static final int HEAD_SIZE = 32;
+
+    /**
+     * 返回宽高，无法识别的格式返回 null。JPEG 返回原始尺寸，不考虑 EXIF 方向。
+     */
+    public static Dimension readDimensions(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = read(channel, 0, HEAD_SIZE);
+            if (head.limit() >= 24 && head.getInt(0) == 0x89504E47 && head.getInt(4) == 0x0D0A1A0A
+                    && head.getInt(12) == 0x49484452) {
+                return new Dimension(head.getInt(16), head.getInt(20));
+            }
+            if (head.limit() >= 10 && head.get(0) == 'G' && head.get(1) == 'I' && head.get(2) == 'F') {
+                head.order(ByteOrder.LITTLE_ENDIAN);
+                return new Dimension(head.getShort(6) & 0xFFFF, head.getShort(8) & 0xFFFF);
+            }
+            if (head.limit() >= 30 && head.getInt(0) == 0x52494646 && head.getInt(8) == 0x57454250) {
+                return readWebp(head);
+            }
+            if (head.limit() >= 4 && (head.getShort(0) & 0xFFFF) == 0xFFD8) {
+                return readJpeg(channel);
+            }
+            return null;
+        }
+    }
+
+    private static Dimension readWebp(ByteBuffer head) {
+        int chunk = head.getInt(12);
+        head.order(ByteOrder.LITTLE_ENDIAN);
+        return switch (chunk) {
+            // 有损：帧头 3 字节与起始码 9D 01 2A 之后是 14 位宽高
+            case 0x56503820 -> new Dimension(head.getShort(26) & 0x3FFF, head.getShort(28) & 0x3FFF);
+            // 无损：签名 0x2F 之后是 14 位的宽减一与高减一
+            case 0x5650384C -> {
+                int bits = head.getInt(21);
+                yield new Dimension((bits & 0x3FFF) + 1, ((bits >>> 14) & 0x3FFF) + 1);
+            }
+            // 扩展格式：画布宽减一与高减一，各 24 位
+            case 0x56503858 -> new Dimension(uint24(head, 24) + 1, uint24(head, 27) + 1);
+            default -> null;
+        };
+    }
+
+    // 依次跳过各段，直到帧头 SOFn
+    private static Dimension readJpeg(FileChannel channel) throws IOException {
+        long position = 2;
+        long size = channel.size();
+        while (position + 4 <= size) {
+            ByteBuffer segment = read(channel, position, 9);
+            if (segment.limit() < 4 || (segment.get(0) & 0xFF) != 0xFF) return null;
+            int marker = segment.get(1) & 0xFF;
+            // 段之间的填充字节
+            if (marker == 0xFF) {
+                position++;
+                continue;
+            }
+            // 没有长度字段的独立标记
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                position += 2;
+                continue;
+            }
+            // 图像数据开始或结束前没有出现帧头
+            if (marker == 0xDA || marker == 0xD9) return null;
+            // SOF0-SOF15，排除 DHT(C4)、JPG(C8)、DAC(CC)
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                if (segment.limit() < 9) return null;
+                return new Dimension(segment.getShort(7) & 0xFFFF, segment.getShort(5) & 0xFFFF);
+            }
+            position += 2 + (segment.getShort(2) & 0xFFFF);
+        }
+        return null;
+    }
+
+    private static int uint24(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset) & 0xFF) | (buffer.get(offset + 1) & 0xFF) << 8 | (buffer.get(offset + 2) & 0xFF) << 16;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) break;
+        }
+        return buffer.flip();
+    }
+}
@@ -3,26 +3,32 @@ package com.tamakara.bakabooru.utils;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
 
 public class SignatureUtils {
 
-    // 使用 HMAC-SHA256 算法生成签名
-    public static String generateSignature(String path, long expiresAt, String secretKey) {
-        try {
-            String data = path + "?expiresAt=" + expiresAt;
+    private static final String ALGORITHM = "HmacSHA256";
 
-            // 创建 HMAC SHA-256 的签名器
-            SecretKeySpec keySpec = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
-            Mac mac = Mac.getInstance("HmacSHA256");
-            mac.init(keySpec);
+    public static SecretKeySpec createKey(byte[] secretKey) {
+        return new SecretKeySpec(secretKey, ALGORITHM);
+    }
 
-            // 生成签名
-            byte[] rawHmac = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getUrlEncoder().encodeToString(rawHmac);
-        } catch (Exception e) {
-            throw new RuntimeException("签名生成失败", e);
+    // 创建 HMAC SHA-256 的签名器，初始化开销较大，调用方应复用
+    public static Mac createMac(SecretKeySpec keySpec) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(keySpec);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("签名器初始化失败", e);
         }
     }
+
+    // 使用 HMAC-SHA256 算法生成签名，Mac 实例不是线程安全的
+    public static String generateSignature(Mac mac, String path, long expiresAt) {
+        String data = path + "?expiresAt=" + expiresAt;
+        byte[] rawHmac = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().encodeToString(rawHmac);
+    }
 }
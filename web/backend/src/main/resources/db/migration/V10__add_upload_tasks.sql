@@ -0,0 +1,16 @@
+-- 上传任务日志，服务重启后恢复未完成的任务
+CREATE TABLE upload_tasks
+(
+    id             TEXT PRIMARY KEY,
+    filename       TEXT,
+    size           BIGINT,
+    uploaded_bytes BIGINT,
+    status         TEXT NOT NULL,
+    error_message  TEXT,
+    hash           TEXT,
+    enable_tagging INTEGER NOT NULL DEFAULT 0,
+    created_at     TEXT,
+    updated_at     TEXT
+);
+
+CREATE INDEX idx_upload_tasks_created_at ON upload_tasks (created_at);
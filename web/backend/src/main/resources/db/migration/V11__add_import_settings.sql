@@ -0,0 +1,5 @@
+-- 服务端批量导入：导入目录、导入方式（link 硬链接 / move 移动）、是否持续监听新文件
+INSERT OR IGNORE INTO system_settings (setting_key, setting_value)
+VALUES ('import.directory', ''),
+       ('import.mode', 'link'),
+       ('import.watch', 'false');
@@ -0,0 +1,34 @@
+-- 全文索引改用 trigram 分词：unicode61 把连续的中日韩文字视为一个词，无法匹配词中间的子串（如“猫咪”匹配“我的猫咪”）
+DROP TRIGGER images_fts_insert;
+DROP TRIGGER images_fts_delete;
+DROP TRIGGER images_fts_update;
+DROP TABLE images_fts;
+
+CREATE VIRTUAL TABLE images_fts USING fts5
+(
+    title,
+    file_name,
+    content = 'images',
+    content_rowid = 'id',
+    tokenize = 'trigram'
+);
+
+INSERT INTO images_fts(images_fts) VALUES ('rebuild');
+
+CREATE TRIGGER images_fts_insert AFTER INSERT ON images
+BEGIN
+    INSERT INTO images_fts (rowid, title, file_name) VALUES (new.id, new.title, new.file_name);
+END;
+
+CREATE TRIGGER images_fts_delete AFTER DELETE ON images
+BEGIN
+    INSERT INTO images_fts (images_fts, rowid, title, file_name) VALUES ('delete', old.id, old.title, old.file_name);
+END;
+
+-- Hibernate 更新时会写入所有列，只在标题或文件名实际变化时重建索引行
+CREATE TRIGGER images_fts_update AFTER UPDATE ON images
+    WHEN old.title IS NOT new.title OR old.file_name IS NOT new.file_name
+BEGIN
+    INSERT INTO images_fts (images_fts, rowid, title, file_name) VALUES ('delete', old.id, old.title, old.file_name);
+    INSERT INTO images_fts (rowid, title, file_name) VALUES (new.id, new.title, new.file_name);
+END;
@@ -0,0 +1,14 @@
+-- 游标分页按 (排序键, id) 排序和定位，为每个可排序字段建立对应的复合索引。
+-- 数值字段的空值按 0 排序，索引表达式需与查询中的 coalesce(列, 0) 完全一致才会被使用
+CREATE INDEX idx_images_size_id ON images (coalesce(size, 0), id);
+CREATE INDEX idx_images_width_id ON images (coalesce(width, 0), id);
+CREATE INDEX idx_images_height_id ON images (coalesce(height, 0), id);
+CREATE INDEX idx_images_view_count_id ON images (coalesce(view_count, 0), id);
+
+-- 创建时间由审计字段写入，只有早期数据可能为空，补齐后直接按列排序
+UPDATE images
+SET created_at = coalesce(updated_at, CAST(strftime('%s', 'now') AS INTEGER) * 1000)
+WHERE created_at IS NULL;
+
+DROP INDEX idx_images_created_at;
+CREATE INDEX idx_images_created_at_id ON images (created_at, id);
@@ -0,0 +1,31 @@
+-- 标题与文件名的全文索引 (外部内容表，数据仍存放在 images 中)
+CREATE VIRTUAL TABLE images_fts USING fts5
+(
+    title,
+    file_name,
+    content = 'images',
+    content_rowid = 'id',
+    tokenize = 'unicode61 remove_diacritics 2',
+    prefix = '2 3'
+);
+
+INSERT INTO images_fts(images_fts) VALUES ('rebuild');
+
+-- 通过触发器与 images 保持同步
+CREATE TRIGGER images_fts_insert AFTER INSERT ON images
+BEGIN
+    INSERT INTO images_fts (rowid, title, file_name) VALUES (new.id, new.title, new.file_name);
+END;
+
+CREATE TRIGGER images_fts_delete AFTER DELETE ON images
+BEGIN
+    INSERT INTO images_fts (images_fts, rowid, title, file_name) VALUES ('delete', old.id, old.title, old.file_name);
+END;
+
+-- Hibernate 更新时会写入所有列，只在标题或文件名实际变化时重建索引行
+CREATE TRIGGER images_fts_update AFTER UPDATE ON images
+    WHEN old.title IS NOT new.title OR old.file_name IS NOT new.file_name
+BEGIN
+    INSERT INTO images_fts (images_fts, rowid, title, file_name) VALUES ('delete', old.id, old.title, old.file_name);
+    INSERT INTO images_fts (rowid, title, file_name) VALUES (new.id, new.title, new.file_name);
+END;
@@ -0,0 +1,4 @@
+-- 签名 URL 有效期与取整时间段（秒）
+INSERT OR IGNORE INTO system_settings (setting_key, setting_value)
+VALUES ('file.url.expire', '86400'),
+       ('file.url.bucket', '3600');
@@ -0,0 +1,3 @@
+-- 缩略图尺寸阶梯（逗号分隔），上传时一次解码生成所有尺寸
+INSERT OR IGNORE INTO system_settings (setting_key, setting_value)
+VALUES ('file.thumbnail.sizes', '256,512,1024');
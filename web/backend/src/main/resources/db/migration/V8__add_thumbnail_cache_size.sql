@@ -0,0 +1,3 @@
+-- 缩略图磁盘缓存配额（字节），默认 1GB
+INSERT OR IGNORE INTO system_settings (setting_key, setting_value)
+VALUES ('file.thumbnail.cache-size', '1073741824');
@@ -0,0 +1,4 @@
+-- AI 打标微批处理：每批最多图片数与最长等待时间（毫秒）
+INSERT OR IGNORE INTO system_settings (setting_key, setting_value)
+VALUES ('tag.batch-size', '8'),
+       ('tag.batch-wait-ms', '20');
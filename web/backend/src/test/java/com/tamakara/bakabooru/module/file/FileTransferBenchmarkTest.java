@@ -0,0 +1,158 @@
+package com.tamakara.bakabooru.module.file;
+
+import com.tamakara.bakabooru.module.file.service.SignatureService;
+import com.tamakara.bakabooru.module.file.service.StorageService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 文件传输基准测试：比较零拷贝路径与原先 ResponseEntity&lt;Resource&gt; 路径的吞吐量及服务端内存分配。
+ * 默认不运行，使用 mvn test -Dtest=FileTransferBenchmarkTest -Dbenchmark=true 手动执行。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class FileTransferBenchmarkTest {
+
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 50;
+
+    @DynamicPropertySource
+    static void dataDir(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("bakabooru-benchmark");
+        Files.createDirectories(dir.resolve("db"));
+        Files.createDirectories(dir.resolve("image"));
+        registry.add("app.data-dir", dir::toString);
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private StorageService storageService;
+    @Autowired
+    private SignatureService signatureService;
+
+    @Test
+    void compareTransferPaths() throws Exception {
+        String hash = "benchmark";
+        byte[] content = new byte[FILE_SIZE];
+        new Random(1).nextBytes(content);
+        Path file = storageService.getShardedImagePath(hash);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+
+        String zeroCopy = "http://localhost:" + port + signatureService.generateSignedUrl("/api/file/" + hash);
+        String resource = "http://localhost:" + port + "/benchmark/resource/" + hash;
+
+        // 预热
+        run(zeroCopy, 2);
+        run(resource, 2);
+
+        report("ResponseEntity<Resource>", resource);
+        report("zero-copy", zeroCopy);
+    }
+
+    private void report(String name, String url) throws Exception {
+        long allocatedBefore = serverAllocatedBytes();
+        long start = System.nanoTime();
+        long bytes = run(url, REQUESTS_PER_THREAD);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = serverAllocatedBytes() - allocatedBefore;
+        int requests = THREADS * REQUESTS_PER_THREAD;
+        System.out.printf("%-26s %8.1f MB/s %8.1f req/s %10.1f KB allocated/req%n",
+                name, bytes / seconds / 1024 / 1024, requests / seconds, allocated / 1024.0 / requests);
+    }
+
+    private long run(String url, int requestsPerThread) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    long total = 0;
+                    byte[] buffer = new byte[64 * 1024];
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        HttpResponse<InputStream> response = client.send(
+                                HttpRequest.newBuilder(URI.create(url)).build(),
+                                HttpResponse.BodyHandlers.ofInputStream());
+                        assertEquals(200, response.statusCode());
+                        try (InputStream in = response.body()) {
+                            int n;
+                            while ((n = in.read(buffer)) > 0) total += n;
+                        }
+                    }
+                    return total;
+                }));
+            }
+            long total = 0;
+            for (Future<Long> future : futures) total += future.get();
+            assertEquals((long) FILE_SIZE * THREADS * requestsPerThread, total);
+            return total;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Tomcat 请求线程的累计分配字节数
+    private long serverAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("http-nio-")) {
+                total += Math.max(0, threads.getThreadAllocatedBytes(thread.threadId()));
+            }
+        }
+        return total;
+    }
+
+    @TestConfiguration
+    static class ResourceEndpoint {
+
+        @RestController
+        static class ResourceController {
+
+            @Autowired
+            private StorageService storageService;
+
+            // 原先的实现方式
+            @GetMapping("/benchmark/resource/{hash}")
+            public ResponseEntity<Resource> get(@PathVariable String hash) throws IOException {
+                Resource resource = new UrlResource(storageService.getImagePath(hash).toUri());
+                return ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(resource);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.tamakara.bakabooru.module.file;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.gif.GifHeaderDirectory;
+import com.drew.metadata.jpeg.JpegDirectory;
+import com.drew.metadata.png.PngDirectory;
+import com.tamakara.bakabooru.utils.ImageHeaderUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 图片尺寸读取基准测试：比较只读文件头的 ImageHeaderUtils 与完整解析元数据的 ImageMetadataReader。
+ * JPEG 前插入 32KB 的 APP 段模拟相机写入的元数据。解析结果的正确性由 ImageHeaderUtilsTest 覆盖。
+ * 默认不运行，使用 mvn test -Dtest=ImageDimensionBenchmarkTest -Dbenchmark=true 手动执行。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ImageDimensionBenchmarkTest {
+
+    private static final int FILES_PER_FORMAT = 200;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void compareWithMetadataReader() throws Exception {
+        Path dir = Files.createTempDirectory("bakabooru-dimension-benchmark");
+        Random random = new Random(1);
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < FILES_PER_FORMAT; i++) {
+            int width = 100 + random.nextInt(1500);
+            int height = 100 + random.nextInt(1500);
+            for (String format : new String[]{"jpg", "png", "gif"}) {
+                Path file = dir.resolve(i + "." + format);
+                byte[] data = encode(width, height, format);
+                Files.write(file, "jpg".equals(format) ? withAppSegment(data, 32 * 1024) : data);
+                files.add(file);
+            }
+        }
+
+        // 预热
+        run(files, true);
+        run(files, false);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) run(files, true);
+        long header = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) run(files, false);
+        long metadata = System.nanoTime() - start;
+
+        int reads = files.size() * ROUNDS;
+        System.out.printf("ImageHeaderUtils: %.2f µs/文件%n", header / 1000.0 / reads);
+        System.out.printf("ImageMetadataReader: %.2f µs/文件%n", metadata / 1000.0 / reads);
+    }
+
+    private void run(List<Path> files, boolean headerOnly) throws Exception {
+        for (Path file : files) {
+            if (headerOnly) {
+                ImageHeaderUtils.readDimensions(file);
+            } else {
+                readWithMetadataReader(file);
+            }
+        }
+    }
+
+    private Dimension readWithMetadataReader(Path file) throws Exception {
+        Metadata metadata = ImageMetadataReader.readMetadata(file.toFile());
+        Directory jpeg = metadata.getFirstDirectoryOfType(JpegDirectory.class);
+        if (jpeg != null) {
+            return new Dimension(jpeg.getInt(JpegDirectory.TAG_IMAGE_WIDTH), jpeg.getInt(JpegDirectory.TAG_IMAGE_HEIGHT));
+        }
+        Directory png = metadata.getFirstDirectoryOfType(PngDirectory.class);
+        if (png != null) {
+            return new Dimension(png.getInt(PngDirectory.TAG_IMAGE_WIDTH), png.getInt(PngDirectory.TAG_IMAGE_HEIGHT));
+        }
+        Directory gif = metadata.getFirstDirectoryOfType(GifHeaderDirectory.class);
+        return new Dimension(gif.getInt(GifHeaderDirectory.TAG_IMAGE_WIDTH), gif.getInt(GifHeaderDirectory.TAG_IMAGE_HEIGHT));
+    }
+
+    private byte[] encode(int width, int height, String format) throws Exception {
+        BufferedImage image = new BufferedImage(width, height,
+                "gif".equals(format) ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg".equals(format) ? "jpeg" : format, out);
+        return out.toByteArray();
+    }
+
+    // 在 SOI 之后插入一个 APP15 段
+    private byte[] withAppSegment(byte[] jpeg, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(jpeg.length + 2 + length);
+        buffer.put(jpeg, 0, 2);
+        buffer.put((byte) 0xFF).put((byte) 0xEF).putShort((short) length);
+        buffer.put(new byte[length - 2]);
+        buffer.put(jpeg, 2, jpeg.length - 2);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,136 @@
+package com.tamakara.bakabooru.module.file;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import com.tamakara.bakabooru.module.file.service.FileThumbnailStore;
+import com.tamakara.bakabooru.module.file.service.FileTransferService;
+import com.tamakara.bakabooru.module.file.service.PackThumbnailStore;
+import com.tamakara.bakabooru.module.file.service.ThumbnailStore;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * 缩略图存储基准测试：比较每个缩略图一个文件与打包存储的单次读取延迟及读写系统调用次数
+ * （系统调用次数取自 /proc/self/io 的 syscr/syscw，仅 Linux 可用）。
+ * 默认不运行，使用 mvn test -Dtest=ThumbnailStoreBenchmarkTest -Dbenchmark=true 手动执行。
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ThumbnailStoreBenchmarkTest {
+
+    private static final int THUMBNAILS = 20_000;
+    private static final int REQUESTS = 100_000;
+
+    private static final ServletOutputStream DISCARD = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+        }
+    };
+
+    @Test
+    void compareStores() throws Exception {
+        Path dir = Files.createTempDirectory("bakabooru-thumbnail-benchmark");
+        AppPaths appPaths = new AppPaths(dir.toString());
+        Files.createDirectories(appPaths.getThumbnailDir());
+        FileTransferService fileTransferService = new FileTransferService();
+
+        FileThumbnailStore fileStore = new FileThumbnailStore(appPaths, fileTransferService);
+        PackThumbnailStore packStore = new PackThumbnailStore(appPaths, fileTransferService);
+        packStore.open();
+
+        Random random = new Random(1);
+        String[] names = new String[THUMBNAILS];
+        for (int i = 0; i < THUMBNAILS; i++) {
+            names[i] = String.format("%064x_256_80.jpg", i);
+            byte[] data = new byte[8 * 1024 + random.nextInt(16 * 1024)];
+            random.nextBytes(data);
+            fileStore.put(names[i], data);
+            packStore.put(names[i], data);
+        }
+
+        // 两种存储的内容一致
+        for (int i = 0; i < THUMBNAILS; i += 997) {
+            assertArrayEquals(serve(fileStore, names[i]).getContentAsByteArray(),
+                    serve(packStore, names[i]).getContentAsByteArray());
+        }
+
+        // 预热
+        run(fileStore, names, REQUESTS / 10);
+        run(packStore, names, REQUESTS / 10);
+
+        report("file", fileStore, names);
+        report("pack", packStore, names);
+        packStore.close();
+    }
+
+    private void report(String label, ThumbnailStore store, String[] names) throws IOException {
+        long[] before = syscalls();
+        long start = System.nanoTime();
+        run(store, names, REQUESTS);
+        long elapsed = System.nanoTime() - start;
+        long[] after = syscalls();
+        System.out.printf("%s: %.2f µs/请求, 读系统调用 %.2f 次/请求, 写系统调用 %.2f 次/请求%n",
+                label,
+                elapsed / 1000.0 / REQUESTS,
+                (after[0] - before[0]) / (double) REQUESTS,
+                (after[1] - before[1]) / (double) REQUESTS);
+    }
+
+    // 响应内容直接丢弃，只测量存储本身的读取开销
+    private void run(ThumbnailStore store, String[] names, int requests) throws IOException {
+        Random random = new Random(2);
+        for (int i = 0; i < requests; i++) {
+            String name = names[random.nextInt(names.length)];
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/file/thumb/" + name);
+            HttpServletResponse response = new HttpServletResponseWrapper(new MockHttpServletResponse()) {
+                @Override
+                public ServletOutputStream getOutputStream() {
+                    return DISCARD;
+                }
+            };
+            store.serve(request, response, name, "\"" + name + "\"");
+        }
+    }
+
+    private MockHttpServletResponse serve(ThumbnailStore store, String name) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/file/thumb/" + name);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        store.serve(request, response, name, "\"" + name + "\"");
+        return response;
+    }
+
+    private long[] syscalls() throws IOException {
+        long[] result = new long[2];
+        Path io = Path.of("/proc/self/io");
+        if (!Files.exists(io)) return result;
+        for (String line : Files.readAllLines(io)) {
+            if (line.startsWith("syscr:")) result[0] = Long.parseLong(line.substring(6).trim());
+            if (line.startsWith("syscw:")) result[1] = Long.parseLong(line.substring(6).trim());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileTransferServiceTest {
+
+    private final FileTransferService fileTransferService = new FileTransferService();
+
+    @Test
+    void streamsSmallFileAndRange() throws Exception {
+        Path file = Files.createTempFile("bakabooru-transfer", ".bin");
+        byte[] data = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        Files.write(file, data);
+
+        MockHttpServletResponse full = new MockHttpServletResponse();
+        fileTransferService.transfer(new MockHttpServletRequest("GET", "/"), full, file, "\"e\"");
+        assertEquals(200, full.getStatus());
+        assertArrayEquals(data, full.getContentAsByteArray());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        MockHttpServletResponse partial = new MockHttpServletResponse();
+        fileTransferService.transfer(request, partial, file, "\"e\"");
+        assertEquals(206, partial.getStatus());
+        assertEquals("bytes 2-5/10", partial.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(new byte[]{2, 3, 4, 5}, partial.getContentAsByteArray());
+    }
+}
@@ -0,0 +1,114 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackThumbnailStoreTest {
+
+    @Test
+    void packSurvivesIndexResizeAndReopen() throws Exception {
+        AppPaths appPaths = appPaths();
+        PackThumbnailStore store = open(appPaths);
+
+        // 约 24MB；超过 700 条时索引原地扩容
+        Random random = new Random(1);
+        byte[][] data = new byte[1200][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new byte[16 * 1024 + random.nextInt(8 * 1024)];
+            random.nextBytes(data[i]);
+            store.put(name(i), data[i]);
+        }
+        store.delete(name(0));
+        store.close();
+
+        Path pack = appPaths.getThumbnailPackDir().resolve("pack-000001.dat");
+        assertTrue(Files.size(pack) < 64L * 1024 * 1024, "包文件大小 " + Files.size(pack));
+
+        store = open(appPaths);
+        assertEquals(404, serve(store, name(0)).getStatus());
+        for (int i = 1; i < data.length; i++) {
+            assertArrayEquals(data[i], serve(store, name(i)).getContentAsByteArray(), name(i));
+        }
+        store.close();
+    }
+
+    @Test
+    void clearKeepsStoreUsable() throws Exception {
+        AppPaths appPaths = appPaths();
+        PackThumbnailStore store = open(appPaths);
+        store.put(name(1), new byte[]{1, 2, 3});
+        store.clear();
+        assertEquals(-1, store.size(name(1)));
+
+        store.put(name(2), new byte[]{4, 5});
+        store.close();
+        store = open(appPaths);
+        assertEquals(-1, store.size(name(1)));
+        assertArrayEquals(new byte[]{4, 5}, serve(store, name(2)).getContentAsByteArray());
+        store.close();
+    }
+
+    @Test
+    void compactionKeepsTombstonesForEarlierPacks() throws Exception {
+        AppPaths appPaths = appPaths();
+        Path dir = appPaths.getThumbnailPackDir();
+        Files.createDirectories(dir);
+        // 包 1 中的 a 在包 2 中被删除；包 2 有效数据为零，会被压缩
+        writePack(dir, 1, 300, "a\t0\t100\nb\t100\t200\n");
+        writePack(dir, 2, 100, "c\t0\t100\nc\t-1\t0\na\t-1\t0\n");
+        writePack(dir, 3, 0, "");
+
+        PackThumbnailStore store = open(appPaths);
+        assertEquals(-1, store.size("a"));
+        store.compact();
+        store.close();
+        assertFalse(Files.exists(dir.resolve("pack-000002.dat")));
+
+        // 索引丢失后从键日志重建，a 不会被恢复
+        Files.delete(dir.resolve("index.dat"));
+        store = open(appPaths);
+        assertEquals(-1, store.size("a"));
+        assertEquals(200, store.size("b"));
+        assertEquals(-1, store.size("c"));
+        store.close();
+    }
+
+    private static AppPaths appPaths() throws IOException {
+        return new AppPaths(Files.createTempDirectory("bakabooru-pack-test").toString());
+    }
+
+    private static PackThumbnailStore open(AppPaths appPaths) throws IOException {
+        PackThumbnailStore store = new PackThumbnailStore(appPaths, new FileTransferService());
+        store.open();
+        return store;
+    }
+
+    private static void writePack(Path dir, int id, int size, String keys) throws IOException {
+        String base = String.format("pack-%06d", id);
+        Files.write(dir.resolve(base + ".dat"), new byte[size]);
+        Files.writeString(dir.resolve(base + ".keys"), keys);
+    }
+
+    private static String name(int i) {
+        return String.format("%064x_256_80.jpg", i);
+    }
+
+    private static MockHttpServletResponse serve(PackThumbnailStore store, String name) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/file/thumb/" + name);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        store.serve(request, response, name, "\"" + name + "\"");
+        return response;
+    }
+}
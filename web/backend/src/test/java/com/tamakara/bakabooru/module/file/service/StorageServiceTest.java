@@ -0,0 +1,127 @@
+package com.tamakara.bakabooru.module.file.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import com.tamakara.bakabooru.utils.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageServiceTest {
+
+    private static final long SIZE = 400L * 1024 * 1024;
+
+    @Test
+    void storePendingImageUsesConstantMemory() throws Exception {
+        Path dir = Files.createTempDirectory("bakabooru-storage-test");
+        AppPaths appPaths = new AppPaths(dir.toString());
+        Files.createDirectories(appPaths.getPendingDir());
+        StorageService storageService = new StorageService(appPaths, null);
+
+        // 预热，排除类加载等一次性分配
+        storageService.storePendingImage("warmup", new GeneratedFile(1024 * 1024));
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        String hash = storageService.storePendingImage("task", new GeneratedFile(SIZE));
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        Path pending = appPaths.getPendingDir().resolve("task");
+        try {
+            assertEquals(SIZE, Files.size(pending));
+            assertEquals(expectedHash(SIZE), hash);
+            // 只有固定大小的缓冲区，分配量与 400MB 的文件大小无关
+            assertTrue(allocated < 4 * 1024 * 1024, "上传分配了 " + allocated + " 字节");
+        } finally {
+            Files.deleteIfExists(pending);
+        }
+    }
+
+    private static String expectedHash(long size) throws Exception {
+        MessageDigest digest = FileUtils.sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new GeneratedStream(size)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return FileUtils.toHex(digest.digest());
+    }
+
+    // 按需生成内容的输入流，测试本身不占用与文件大小相当的内存
+    private static final class GeneratedStream extends InputStream {
+        private final long size;
+        private long position;
+
+        GeneratedStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            return position < size ? (int) (position++ * 31 & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= size) return -1;
+            int n = (int) Math.min(len, size - position);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) (position++ * 31);
+            }
+            return n;
+        }
+    }
+
+    private record GeneratedFile(long size) implements MultipartFile {
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "large.png";
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new UnsupportedOperationException("不应把整个上传读入内存");
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new GeneratedStream(size);
+        }
+
+        @Override
+        public void transferTo(File dest) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.tamakara.bakabooru.module.gallery.service;
+
+import com.tamakara.bakabooru.module.gallery.dto.ImageDto;
+import com.tamakara.bakabooru.module.gallery.dto.SearchRequestDto;
+import com.tamakara.bakabooru.module.gallery.dto.SearchSliceDto;
+import com.tamakara.bakabooru.module.gallery.entity.Image;
+import com.tamakara.bakabooru.module.gallery.model.SearchCursor;
+import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
+import com.tamakara.bakabooru.module.tag.entity.Tag;
+import com.tamakara.bakabooru.module.tag.service.TagIndexService;
+import com.tamakara.bakabooru.module.tag.service.TagService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class SearchServiceTest {
+
+    @DynamicPropertySource
+    static void dataDir(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("bakabooru-test");
+        Files.createDirectories(dir.resolve("db"));
+        registry.add("app.data-dir", dir::toString);
+    }
+
+    @Autowired
+    private ImageRepository imageRepository;
+    @Autowired
+    private ImageService imageService;
+    @Autowired
+    private SearchService searchService;
+    @Autowired
+    private TagService tagService;
+    @Autowired
+    private TagIndexService tagIndexService;
+    @Autowired
+    private SearchCacheService searchCacheService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        if (imageRepository.count() > 0) return;
+
+        Tag common = tagService.findOrCreateTag("test_common", "general");
+        for (int i = 0; i < 40; i++) {
+            Image image = new Image();
+            image.setTitle("image " + i);
+            image.setFileName("image_" + i + ".png");
+            image.setHash("hash_" + i);
+            image.setTags(Set.of(common,
+                    tagService.findOrCreateTag("test_tag_" + i, "general"),
+                    tagService.findOrCreateTag("test_group_" + i % 4, "general")));
+            imageRepository.save(image);
+        }
+        tagIndexService.rebuild();
+    }
+
+    @Test
+    void listImagesUsesConstantStatementsPerPage() {
+        long small = countStatements(() -> imageService.listImages(PageRequest.of(0, 5, Sort.by("id"))));
+        long large = countStatements(() -> imageService.listImages(PageRequest.of(0, 30, Sort.by("id"))));
+
+        // 分页查询 + COUNT + 一次批量加载标签
+        assertEquals(3, large);
+        assertEquals(small, large);
+    }
+
+    @Test
+    void searchUsesConstantStatementsPerPage() {
+        long small = countStatements(() -> search("test_common", 0, 5));
+        long large = countStatements(() -> search("test_common", 1, 30));
+
+        // 分页查询 + 一次批量加载标签，总数来自标签索引
+        assertEquals(2, large);
+        assertEquals(small, large);
+    }
+
+    @Test
+    void scrollVisitsEveryImageOnce() {
+        // 尺寸均为空，按 size 排序时全部并列，由 id 决定顺序
+        for (String sort : List.of("createdAt,DESC", "id,ASC", "size,ASC", "width,DESC", "viewCount,ASC", "RANDOM")) {
+            List<Long> ids = new ArrayList<>();
+            String cursor = null;
+            do {
+                SearchSliceDto slice = scroll(sort, cursor);
+                slice.getContent().forEach(image -> ids.add(image.getId()));
+                cursor = slice.getNextCursor();
+                assertEquals(cursor != null, slice.isHasNext(), sort);
+            } while (cursor != null);
+            assertEquals(40, ids.size(), sort);
+            assertEquals(40, new HashSet<>(ids).size(), sort);
+            if (sort.startsWith("id")) {
+                assertEquals(ids.stream().sorted().toList(), ids);
+            }
+        }
+    }
+
+    @Test
+    void scrollContinuesFromNullCreatedAt() {
+        Tag tag = tagService.findOrCreateTag("test_null_created", "general");
+        for (int i = 0; i < 3; i++) {
+            saveImage("null_created_" + i, tag);
+        }
+        // 早期数据的创建时间可能为空，游标不能编码为无法解析的 "null"
+        jdbcTemplate.update("UPDATE images SET created_at = NULL WHERE title = 'null_created_0'");
+
+        List<String> titles = new ArrayList<>();
+        String cursor = null;
+        do {
+            SearchRequestDto request = new SearchRequestDto();
+            request.setTagSearch("test_null_created");
+            request.setSort("createdAt,ASC");
+            request.setCursor(cursor);
+            request.setSize(1);
+            SearchSliceDto slice = searchService.scroll(request);
+            slice.getContent().forEach(image -> titles.add(image.getTitle()));
+            cursor = slice.getNextCursor();
+        } while (cursor != null);
+        assertEquals(List.of("null_created_0", "null_created_1", "null_created_2"), titles);
+    }
+
+    @Test
+    void scrollRejectsInvalidCursor() {
+        List<String> cursors = List.of(
+                "not-a-cursor",
+                new SearchCursor("id", true, 0, "abc", 0).encode(),
+                new SearchCursor("RANDOM", true, 1, "-5", 0).encode(),
+                new SearchCursor("createdAt", false, 0, "yesterday", 3).encode());
+        for (String cursor : cursors) {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> scroll(null, cursor));
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode(), cursor);
+        }
+    }
+
+    @Test
+    void seededRandomOrderSeesNewImages() {
+        Tag tag = tagService.findOrCreateTag("test_random_fresh", "general");
+        for (int i = 0; i < 3; i++) {
+            saveImage("random_" + i, tag);
+        }
+        assertEquals(3, searchRandom("test_random_fresh").getTotalElements());
+
+        // 新图片入库后同一种子的随机排列重新计算
+        saveImage("random_3", tag);
+        Page<ImageDto> result = searchRandom("test_random_fresh");
+        assertEquals(4, result.getTotalElements());
+        assertEquals(4, result.getContent().size());
+    }
+
+    @Test
+    void estimatedTotalSeesNewImages() {
+        Tag tag = tagService.findOrCreateTag("test_total_fresh", "general");
+        saveImage("total_0", tag);
+        saveImage("total_1", tag);
+        assertEquals(2, estimateTotal("test_total_fresh"));
+
+        // 尺寸条件需要 COUNT 查询，缓存的总数在数据变化后失效
+        saveImage("total_2", tag);
+        assertEquals(3, estimateTotal("test_total_fresh"));
+    }
+
+    private long estimateTotal(String tagSearch) {
+        SearchRequestDto request = new SearchRequestDto();
+        request.setTagSearch(tagSearch);
+        request.setSizeMin(1L);
+        request.setEstimateTotal(true);
+        return searchService.scroll(request).getEstimatedTotal();
+    }
+
+    @Test
+    void keywordMatchesCjkInfix() {
+        Tag tag = tagService.findOrCreateTag("test_keyword_cjk", "general");
+        saveImage("我的猫咪壁纸", tag);
+
+        // 三个字以上走 trigram 全文索引，两个字退回 LIKE
+        for (String keyword : List.of("猫咪壁", "猫咪", "的猫咪壁纸")) {
+            Page<ImageDto> result = searchKeyword(keyword, null);
+            assertEquals(1, result.getTotalElements(), keyword);
+            assertEquals("我的猫咪壁纸", result.getContent().get(0).getTitle(), keyword);
+        }
+        assertEquals(1, searchKeyword("猫咪壁", "RELEVANCE").getTotalElements());
+        assertEquals(0, searchKeyword("狗狗壁", null).getTotalElements());
+    }
+
+    @Test
+    void keywordFallbackMatchesEveryToken() {
+        Tag tag = tagService.findOrCreateTag("test_keyword_tokens", "general");
+        saveImage("marmot otter", tag);
+        saveImage("otter marmot", tag);
+        saveImage("marmot alone", tag);
+
+        // 全文检索与短词退回的 LIKE 都要求每个词分别匹配，与词的顺序无关
+        for (String keyword : List.of("marmot otter", "otter marmot", "rm er", "marmot er")) {
+            assertEquals(2, searchKeyword(keyword, null).getTotalElements(), keyword);
+        }
+    }
+
+    private Page<ImageDto> searchKeyword(String keyword, String sort) {
+        SearchRequestDto request = new SearchRequestDto();
+        request.setKeyword(keyword);
+        request.setSort(sort);
+        return searchService.search(request);
+    }
+
+    private SearchSliceDto scroll(String sort, String cursor) {
+        SearchRequestDto request = new SearchRequestDto();
+        request.setTagSearch("test_common");
+        request.setSort(sort);
+        request.setCursor(cursor);
+        request.setSize(7);
+        return searchService.scroll(request);
+    }
+
+    private Page<ImageDto> searchRandom(String tagSearch) {
+        SearchRequestDto request = new SearchRequestDto();
+        request.setTagSearch(tagSearch);
+        request.setSort("RANDOM");
+        request.setRandomSeed("fixed");
+        request.setSize(10);
+        return searchService.search(request);
+    }
+
+    private void saveImage(String name, Tag tag) {
+        Image image = new Image();
+        image.setTitle(name);
+        image.setFileName(name + ".png");
+        image.setHash("hash_" + name);
+        image.setSize(100L);
+        image.setTags(Set.of(tag));
+        imageRepository.save(image);
+        tagIndexService.addImage(image.getId(), List.of(tag.getName()));
+        searchCacheService.invalidate();
+    }
+
+    private Page<ImageDto> search(String tagSearch, int page, int size) {
+        SearchRequestDto request = new SearchRequestDto();
+        request.setTagSearch(tagSearch);
+        request.setPage(page);
+        request.setSize(size);
+        return searchService.search(request);
+    }
+
+    private long countStatements(Supplier<Page<ImageDto>> query) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        Page<ImageDto> page = query.get();
+        assertTrue(page.getContent().stream().allMatch(dto -> dto.getTags().size() == 3));
+        return statistics.getPrepareStatementCount();
+    }
+}
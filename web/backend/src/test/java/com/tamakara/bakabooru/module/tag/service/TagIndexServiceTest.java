@@ -0,0 +1,58 @@
+package com.tamakara.bakabooru.module.tag.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TagIndexServiceTest {
+
+    private TagIndexService tagIndexService;
+
+    // 没有事务时修改立即生效
+    @BeforeEach
+    void setUp() {
+        tagIndexService = new TagIndexService(null);
+        tagIndexService.addImage(1L, List.of("cat", "outdoor"));
+        tagIndexService.addImage(2L, List.of("cat"));
+        tagIndexService.addImage(3L, List.of("dog"));
+    }
+
+    @Test
+    void resolveIncludedAndExcludedTags() {
+        assertNull(tagIndexService.resolve(List.of(), List.of()));
+        assertEquals(RoaringBitmap.bitmapOf(1, 2), tagIndexService.resolve(List.of("cat"), List.of()));
+        assertEquals(RoaringBitmap.bitmapOf(1), tagIndexService.resolve(List.of("cat", "outdoor"), List.of()));
+        assertEquals(RoaringBitmap.bitmapOf(2), tagIndexService.resolve(List.of("cat"), List.of("outdoor")));
+        assertEquals(RoaringBitmap.bitmapOf(3), tagIndexService.resolve(List.of(), List.of("cat")));
+        assertEquals(new RoaringBitmap(), tagIndexService.resolve(List.of("missing"), List.of()));
+        assertEquals(RoaringBitmap.bitmapOf(3), tagIndexService.complement(RoaringBitmap.bitmapOf(1, 2)));
+    }
+
+    @Test
+    void removeImageClearsItsTags() {
+        tagIndexService.removeImage(1L, List.of("cat", "outdoor"));
+
+        assertEquals(2, tagIndexService.getImageCount());
+        assertEquals(1, tagIndexService.getTagCardinality("cat"));
+        assertEquals(0, tagIndexService.getTagCardinality("outdoor"));
+        assertEquals(RoaringBitmap.bitmapOf(2, 3), tagIndexService.resolve(List.of(), List.of("outdoor")));
+    }
+
+    @Test
+    void replaceAndRemoveTags() {
+        tagIndexService.replaceTags(2L, List.of("cat"), List.of("dog"));
+        assertEquals(RoaringBitmap.bitmapOf(2, 3), tagIndexService.resolve(List.of("dog"), List.of()));
+        assertEquals(RoaringBitmap.bitmapOf(1), tagIndexService.resolve(List.of("cat"), List.of()));
+
+        tagIndexService.removeTags(1L, List.of("cat"));
+        tagIndexService.addTag(3L, "outdoor");
+        assertEquals(0, tagIndexService.getTagCardinality("cat"));
+        assertEquals(RoaringBitmap.bitmapOf(1, 3), tagIndexService.resolve(List.of("outdoor"), List.of()));
+        assertEquals(3, tagIndexService.getImageCount());
+    }
+}
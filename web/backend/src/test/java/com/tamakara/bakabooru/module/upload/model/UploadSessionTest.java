@@ -0,0 +1,104 @@
+package com.tamakara.bakabooru.module.upload.model;
+
+import com.tamakara.bakabooru.utils.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadSessionTest {
+
+    private static final int SIZE = 300 * 1024;
+
+    private UploadSession session;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path file = Files.createTempDirectory("bakabooru-session-test").resolve("pending");
+        session = UploadSession.open("task", SIZE, file);
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    @Test
+    void addRangeMergesOutOfOrderAndOverlappingChunks() {
+        session.addRange(500, 600);
+        session.addRange(0, 100);
+        session.addRange(50, 200);
+        // 空区间被忽略
+        session.addRange(300, 300);
+
+        assertEquals(List.of("0-200", "500-600"), ranges());
+        assertEquals(300, session.getReceivedBytes());
+        assertTrue(session.covers(0, 200));
+        assertTrue(session.covers(520, 600));
+        assertFalse(session.covers(0, 201));
+        assertFalse(session.covers(150, 550));
+
+        // 填补中间的空洞后合并为一个区间，重叠部分不重复计数
+        session.addRange(150, 550);
+        assertEquals(List.of("0-600"), ranges());
+        assertEquals(600, session.getReceivedBytes());
+        assertFalse(session.isComplete());
+
+        session.addRange(600, SIZE);
+        assertTrue(session.isComplete());
+    }
+
+    @Test
+    void hashAdvancesWithContiguousPrefix() throws Exception {
+        byte[] content = new byte[SIZE];
+        new Random(1).nextBytes(content);
+
+        // 乱序写入，哈希只能推进到从文件头开始的连续部分
+        write(content, 200 * 1024, SIZE);
+        session.advanceHash();
+        write(content, 0, 100 * 1024);
+        session.advanceHash();
+        write(content, 100 * 1024, 200 * 1024);
+        session.advanceHash();
+
+        assertEquals(FileUtils.toHex(FileUtils.sha256().digest(content)), session.finish());
+    }
+
+    @Test
+    void finishRejectsMissingChunks() {
+        session.addRange(0, SIZE - 1);
+        assertThrows(IOException.class, () -> session.finish());
+    }
+
+    @Test
+    void commitExcludesChunkWrites() {
+        assertTrue(session.beginWrite());
+        assertFalse(session.beginCommit());
+        session.endWrite();
+
+        assertTrue(session.beginCommit());
+        assertFalse(session.beginWrite());
+        assertFalse(session.beginCommit());
+    }
+
+    private void write(byte[] content, int start, int end) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(content, start, end - start);
+        long position = start;
+        while (data.hasRemaining()) {
+            position += session.getChannel().write(data, position);
+        }
+        session.addRange(start, end);
+    }
+
+    private List<String> ranges() {
+        return session.getRanges().stream().map(range -> range[0] + "-" + range[1]).toList();
+    }
+}
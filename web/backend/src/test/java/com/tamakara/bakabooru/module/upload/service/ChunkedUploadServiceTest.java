@@ -0,0 +1,82 @@
+package com.tamakara.bakabooru.module.upload.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import com.tamakara.bakabooru.module.upload.dto.UploadSessionRequestDto;
+import com.tamakara.bakabooru.module.upload.model.UploadTask;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class ChunkedUploadServiceTest {
+
+    @DynamicPropertySource
+    static void dataDir(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("bakabooru-test");
+        Files.createDirectories(dir.resolve("db"));
+        Files.createDirectories(dir.resolve("temp").resolve("pending"));
+        registry.add("app.data-dir", dir::toString);
+    }
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+    @Autowired
+    private UploadQueueService uploadQueueService;
+    @Autowired
+    private AppPaths appPaths;
+
+    @Test
+    void commitRejectsConcurrentChunksAndDeclaredHashMismatch() throws Exception {
+        UploadSessionRequestDto request = new UploadSessionRequestDto();
+        request.setFilename("chunked.png");
+        request.setSize(8);
+        request.setHash("0".repeat(64));
+        String id = chunkedUploadService.createSession(request).getId();
+
+        chunkedUploadService.writeChunk(id, 4, 4, new ByteArrayInputStream(new byte[]{5, 6, 7, 8}));
+        assertStatus(HttpStatus.CONFLICT, () -> chunkedUploadService.commit(id));
+        chunkedUploadService.writeChunk(id, 0, 4, new ByteArrayInputStream(new byte[]{1, 2, 3, 4}));
+        assertEquals(8, uploadQueueService.getTask(id).getUploadedBytes());
+
+        // 长度未知的分块仍在写入时不能提交
+        PipedOutputStream out = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(out);
+        CompletableFuture<?> writer = CompletableFuture.runAsync(() -> chunkedUploadService.writeChunk(id, 0, -1, in));
+        out.write(new byte[]{1, 2});
+        out.flush();
+        // 分块已开始读取
+        while (in.available() > 0) Thread.onSpinWait();
+        assertStatus(HttpStatus.CONFLICT, () -> chunkedUploadService.commit(id));
+        out.close();
+        writer.get(5, TimeUnit.SECONDS);
+
+        // 内容与声明的哈希不一致，任务失败并删除待处理文件
+        UploadTask task = chunkedUploadService.commit(id);
+        assertEquals(UploadTask.UploadStatus.FAILED, task.getStatus());
+        assertEquals("文件哈希与声明的不一致", task.getErrorMessage());
+        assertFalse(Files.exists(appPaths.getPendingDir().resolve(id)));
+        assertStatus(HttpStatus.NOT_FOUND,
+                () -> chunkedUploadService.writeChunk(id, 0, 1, new ByteArrayInputStream(new byte[]{1})));
+    }
+
+    private static void assertStatus(HttpStatus status, Executable executable) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, executable);
+        assertEquals(status, e.getStatusCode());
+    }
+}
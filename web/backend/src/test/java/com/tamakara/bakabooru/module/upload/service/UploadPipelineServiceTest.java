@@ -0,0 +1,188 @@
+package com.tamakara.bakabooru.module.upload.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import com.tamakara.bakabooru.module.file.service.ThumbnailService;
+import com.tamakara.bakabooru.module.gallery.entity.Image;
+import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
+import com.tamakara.bakabooru.module.tag.service.TagService;
+import com.tamakara.bakabooru.module.upload.model.UploadTask;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest
+class UploadPipelineServiceTest {
+
+    @DynamicPropertySource
+    static void dataDir(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("bakabooru-test");
+        Files.createDirectories(dir.resolve("db"));
+        Files.createDirectories(dir.resolve("temp").resolve("pending"));
+        registry.add("app.data-dir", dir::toString);
+    }
+
+    @Autowired
+    private UploadQueueService uploadQueueService;
+    @Autowired
+    private UploadPipelineService uploadPipelineService;
+    @Autowired
+    private ImageRepository imageRepository;
+    @Autowired
+    private AppPaths appPaths;
+    @MockitoSpyBean
+    private ThumbnailService thumbnailService;
+    @MockitoSpyBean
+    private TagService tagService;
+
+    @Test
+    void taskPassesThroughEveryStage() throws Exception {
+        UploadTask task = await(uploadQueueService.createTask(png("stages.png", 32, 24), false));
+
+        assertEquals(UploadTask.UploadStatus.COMPLETED, task.getStatus(), task.getErrorMessage());
+        // 未开启打标时跳过打标阶段
+        assertTrue(task.getStageTimings().keySet().containsAll(List.of(
+                "validate", "validate.queue", "metadata", "metadata.queue", "persist", "persist.queue")));
+        assertFalse(task.getStageTimings().containsKey("tagging"));
+        Image image = imageRepository.findByHash(task.getHash()).orElseThrow();
+        assertEquals(32, image.getWidth());
+        assertEquals(24, image.getHeight());
+        assertFalse(Files.exists(appPaths.getPendingDir().resolve(task.getId())));
+    }
+
+    @Test
+    void stageExceptionMarksTaskFailed() throws Exception {
+        MockMultipartFile file = png("duplicate.png", 16, 16);
+        assertEquals(UploadTask.UploadStatus.COMPLETED, await(uploadQueueService.createTask(file, false)).getStatus());
+
+        // 校验阶段发现重复并抛出异常
+        UploadTask duplicate = await(uploadQueueService.createTask(file, false));
+        assertEquals(UploadTask.UploadStatus.FAILED, duplicate.getStatus());
+        assertTrue(duplicate.getErrorMessage().startsWith("重复的图片"), duplicate.getErrorMessage());
+        assertFalse(Files.exists(appPaths.getPendingDir().resolve(duplicate.getId())));
+    }
+
+    @Test
+    void errorFailsOnlyTheTaskAndKeepsWorkerAlive() throws Exception {
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        doAnswer(invocation -> {
+            worker.set(Thread.currentThread());
+            throw new OutOfMemoryError("模拟内存不足");
+        }).when(thumbnailService).generateVariants(anyString(), any());
+
+        UploadTask task = await(uploadQueueService.createTask(png("error.png", 12, 12), false));
+        assertEquals(UploadTask.UploadStatus.FAILED, task.getStatus());
+        assertEquals("模拟内存不足", task.getErrorMessage());
+        worker.get().join(200);
+        assertTrue(worker.get().isAlive());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    void shutdownLeavesInFlightTaskForRecovery() throws Exception {
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        doAnswer(invocation -> {
+            worker.set(Thread.currentThread());
+            Thread.sleep(60_000);
+            return null;
+        }).when(tagService).tagImage(anyString());
+
+        UploadTask task = uploadQueueService.createTask(png("shutdown.png", 10, 10), true);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (worker.get() == null) {
+            assertTrue(System.currentTimeMillis() < deadline, "任务未进入打标阶段: " + task.getStatus());
+            Thread.sleep(20);
+        }
+
+        uploadPipelineService.shutdown();
+        worker.get().join(5_000);
+        assertFalse(worker.get().isAlive());
+        assertEquals(UploadTask.UploadStatus.TAGGING, task.getStatus());
+        assertNull(task.getErrorMessage());
+        assertTrue(Files.exists(appPaths.getPendingDir().resolve(task.getId())));
+    }
+
+    @Test
+    void admissionIsReleasedWhenTaskIsRejected() throws Exception {
+        int capacity = availablePermits();
+        assertTrue(capacity > 0);
+
+        UploadTask rejected = uploadQueueService.createTask(
+                new MockMultipartFile("file", "notes.txt", "text/plain", new byte[]{1}), false);
+        assertEquals(UploadTask.UploadStatus.FAILED, rejected.getStatus());
+        assertEquals(capacity, availablePermits());
+
+        await(uploadQueueService.createTask(png("released.png", 8, 8), false));
+        assertEquals(capacity, availablePermits());
+    }
+
+    @Test
+    void returns429WhenAdmissionIsExhausted() {
+        int capacity = availablePermits();
+        for (int i = 0; i < capacity; i++) {
+            uploadPipelineService.reserve();
+        }
+        try {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                    () -> uploadQueueService.createTask(new MockMultipartFile("file", "full.png", "image/png", new byte[]{1}), false));
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatusCode());
+        } finally {
+            for (int i = 0; i < capacity; i++) {
+                uploadPipelineService.release();
+            }
+        }
+        assertEquals(capacity, availablePermits());
+    }
+
+    // 逐个预留直到返回 429，再全部归还
+    private int availablePermits() {
+        int count = 0;
+        try {
+            while (true) {
+                uploadPipelineService.reserve();
+                count++;
+            }
+        } catch (ResponseStatusException e) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatusCode());
+        }
+        for (int i = 0; i < count; i++) {
+            uploadPipelineService.release();
+        }
+        return count;
+    }
+
+    private static UploadTask await(UploadTask task) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (task.getStatus() != UploadTask.UploadStatus.COMPLETED && task.getStatus() != UploadTask.UploadStatus.FAILED) {
+            assertTrue(System.currentTimeMillis() < deadline, "任务未完成: " + task.getStatus());
+            Thread.sleep(20);
+        }
+        return task;
+    }
+
+    private static MockMultipartFile png(String name, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return new MockMultipartFile("file", name, "image/png", out.toByteArray());
+    }
+}
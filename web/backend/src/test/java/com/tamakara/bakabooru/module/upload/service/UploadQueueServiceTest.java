@@ -0,0 +1,133 @@
+package com.tamakara.bakabooru.module.upload.service;
+
+import com.tamakara.bakabooru.config.AppPaths;
+import com.tamakara.bakabooru.module.gallery.entity.Image;
+import com.tamakara.bakabooru.module.gallery.repository.ImageRepository;
+import com.tamakara.bakabooru.module.upload.model.UploadTask;
+import com.tamakara.bakabooru.utils.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class UploadQueueServiceTest {
+
+    @DynamicPropertySource
+    static void dataDir(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("bakabooru-test");
+        Files.createDirectories(dir.resolve("db"));
+        Files.createDirectories(dir.resolve("temp").resolve("pending"));
+        registry.add("app.data-dir", dir::toString);
+    }
+
+    @Autowired
+    private UploadQueueService uploadQueueService;
+    @Autowired
+    private UploadTaskJournal uploadTaskJournal;
+    @Autowired
+    private ImageRepository imageRepository;
+    @Autowired
+    private AppPaths appPaths;
+
+    @Test
+    void recoverResumesOrFailsUnfinishedTasks() throws Exception {
+        Path pendingDir = appPaths.getPendingDir();
+
+        // 入库已提交，但完成状态未写入日志
+        Image saved = new Image();
+        saved.setTitle("saved");
+        saved.setFileName("saved.png");
+        saved.setHash("recover_saved");
+        imageRepository.save(saved);
+        UploadTask saving = record(UploadTask.UploadStatus.SAVING, "recover_saved", LocalDateTime.now());
+
+        // 待处理文件还在，重新排队处理
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(12, 10, BufferedImage.TYPE_INT_RGB), "png", png);
+        String hash = FileUtils.toHex(FileUtils.sha256().digest(png.toByteArray()));
+        UploadTask requeued = record(UploadTask.UploadStatus.PROCESSING, hash, LocalDateTime.now());
+        Files.write(pendingDir.resolve(requeued.getId()), png.toByteArray());
+
+        UploadTask lost = record(UploadTask.UploadStatus.TAGGING, "recover_lost", LocalDateTime.now());
+        UploadTask uploading = record(UploadTask.UploadStatus.UPLOADING, null, LocalDateTime.now());
+        UploadTask expired = record(UploadTask.UploadStatus.COMPLETED, null, LocalDateTime.now().minusDays(8));
+        UploadTask recent = record(UploadTask.UploadStatus.FAILED, null, LocalDateTime.now().minusDays(1));
+        Files.write(pendingDir.resolve("orphan"), new byte[]{1});
+        uploadTaskJournal.flush();
+
+        uploadQueueService.recover();
+
+        assertEquals(UploadTask.UploadStatus.COMPLETED, uploadQueueService.getTask(saving.getId()).getStatus());
+        assertEquals(UploadTask.UploadStatus.FAILED, uploadQueueService.getTask(lost.getId()).getStatus());
+        assertEquals(UploadTask.UploadStatus.FAILED, uploadQueueService.getTask(uploading.getId()).getStatus());
+        assertEquals(UploadTask.UploadStatus.FAILED, uploadQueueService.getTask(recent.getId()).getStatus());
+        assertNull(uploadQueueService.getTask(expired.getId()));
+        assertFalse(Files.exists(pendingDir.resolve("orphan")));
+
+        UploadTask resumed = uploadQueueService.getTask(requeued.getId());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (resumed.getStatus() != UploadTask.UploadStatus.COMPLETED) {
+            assertNotEquals(UploadTask.UploadStatus.FAILED, resumed.getStatus(), resumed.getErrorMessage());
+            assertTrue(System.currentTimeMillis() < deadline, "任务未完成: " + resumed.getStatus());
+            Thread.sleep(20);
+        }
+        assertTrue(imageRepository.findByHash(hash).isPresent());
+
+        uploadTaskJournal.flush();
+        List<String> journaled = uploadTaskJournal.loadAll().stream().map(UploadTask::getId).toList();
+        assertFalse(journaled.contains(expired.getId()));
+        assertTrue(journaled.contains(requeued.getId()));
+    }
+
+    @Test
+    void existingHashesIgnoreAbandonedAndDeletedUploads() throws Exception {
+        // 分块上传只声明了哈希，文件并未上传
+        String declared = "d".repeat(64);
+        uploadQueueService.createUploadingTask("declared.png", 10, false, declared);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(9, 7, BufferedImage.TYPE_INT_RGB), "png", png);
+        UploadTask task = uploadQueueService.createTask(
+                new MockMultipartFile("file", "existing.png", "image/png", png.toByteArray()), false);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (task.getStatus() != UploadTask.UploadStatus.COMPLETED) {
+            assertNotEquals(UploadTask.UploadStatus.FAILED, task.getStatus(), task.getErrorMessage());
+            assertTrue(System.currentTimeMillis() < deadline, "任务未完成: " + task.getStatus());
+            Thread.sleep(20);
+        }
+        assertEquals(Set.of(task.getHash()), uploadQueueService.findExistingHashes(List.of(declared, task.getHash())));
+
+        // 图片删除后任务仍为已完成，但不应再被跳过
+        imageRepository.delete(imageRepository.findByHash(task.getHash()).orElseThrow());
+        assertEquals(Set.of(), uploadQueueService.findExistingHashes(List.of(declared, task.getHash())));
+    }
+
+    private UploadTask record(UploadTask.UploadStatus status, String hash, LocalDateTime updatedAt) {
+        UploadTask task = new UploadTask();
+        task.setId(UUID.randomUUID().toString());
+        task.setFilename("recover.png");
+        task.setSize(10);
+        task.setStatus(status);
+        task.setHash(hash);
+        task.setCreatedAt(updatedAt);
+        task.setUpdatedAt(updatedAt);
+        uploadTaskJournal.record(task);
+        return task;
+    }
+}
@@ -0,0 +1,95 @@
+package com.tamakara.bakabooru.module.upload.service;
+
+import com.tamakara.bakabooru.module.upload.model.UploadTask;
+import com.tamakara.bakabooru.module.upload.model.UploadTaskStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class UploadTaskJournalTest {
+
+    @DynamicPropertySource
+    static void dataDir(DynamicPropertyRegistry registry) throws IOException {
+        Path dir = Files.createTempDirectory("bakabooru-test");
+        Files.createDirectories(dir.resolve("db"));
+        registry.add("app.data-dir", dir::toString);
+    }
+
+    @Autowired
+    private UploadTaskJournal uploadTaskJournal;
+
+    @Test
+    void flushWritesLatestStateAndDeletes() {
+        UploadTask first = task(UploadTask.UploadStatus.PENDING);
+        UploadTask second = task(UploadTask.UploadStatus.UPLOADING);
+        uploadTaskJournal.record(first);
+        uploadTaskJournal.record(second);
+        uploadTaskJournal.flush();
+
+        Map<String, UploadTask> loaded = loadAll();
+        assertEquals(UploadTask.UploadStatus.PENDING, loaded.get(first.getId()).getStatus());
+        assertEquals(first.getCreatedAt(), loaded.get(first.getId()).getCreatedAt());
+        assertEquals("a.png", loaded.get(first.getId()).getFilename());
+        assertTrue(loaded.get(first.getId()).isEnableTagging());
+
+        // 两次刷新之间的多次变化只写入最新状态
+        first.setStatus(UploadTask.UploadStatus.PROCESSING);
+        uploadTaskJournal.record(first);
+        first.setStatus(UploadTask.UploadStatus.COMPLETED);
+        uploadTaskJournal.record(first);
+        uploadTaskJournal.delete(second.getId());
+        uploadTaskJournal.flush();
+
+        loaded = loadAll();
+        assertEquals(UploadTask.UploadStatus.COMPLETED, loaded.get(first.getId()).getStatus());
+        assertFalse(loaded.containsKey(second.getId()));
+    }
+
+    @Test
+    void removedTaskIsNotRecordedAgain() {
+        UploadTaskStore store = new UploadTaskStore();
+        UploadTask task = task(UploadTask.UploadStatus.PROCESSING);
+        store.addTask(task);
+        uploadTaskJournal.record(task);
+        uploadTaskJournal.flush();
+
+        // 删除后流水线仍在更新状态
+        store.removeTask(task.getId());
+        uploadTaskJournal.delete(task.getId());
+        task.setStatus(UploadTask.UploadStatus.COMPLETED);
+        uploadTaskJournal.record(task);
+        uploadTaskJournal.flush();
+
+        assertFalse(loadAll().containsKey(task.getId()));
+    }
+
+    private Map<String, UploadTask> loadAll() {
+        return uploadTaskJournal.loadAll().stream().collect(Collectors.toMap(UploadTask::getId, Function.identity()));
+    }
+
+    private static UploadTask task(UploadTask.UploadStatus status) {
+        UploadTask task = new UploadTask();
+        task.setId(UUID.randomUUID().toString());
+        task.setFilename("a.png");
+        task.setSize(10);
+        task.setStatus(status);
+        task.setEnableTagging(true);
+        task.setCreatedAt(LocalDateTime.now());
+        task.setUpdatedAt(LocalDateTime.now());
+        return task;
+    }
+}
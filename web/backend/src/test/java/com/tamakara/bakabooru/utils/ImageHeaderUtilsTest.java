@@ -0,0 +1,129 @@
+package com.tamakara.bakabooru.utils;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ImageHeaderUtilsTest {
+
+    private static Path dir;
+
+    @BeforeAll
+    static void createDir() throws IOException {
+        dir = Files.createTempDirectory("bakabooru-header-test");
+    }
+
+    @Test
+    void readsPngAndGif() throws Exception {
+        assertEquals(new Dimension(321, 123), probe("a.png", encode(321, 123, "png")));
+        assertEquals(new Dimension(77, 900), probe("a.gif", encode(77, 900, "gif")));
+    }
+
+    @Test
+    void readsJpegAfterMetadataSegments() throws Exception {
+        byte[] jpeg = encode(640, 427, "jpeg");
+        assertEquals(new Dimension(640, 427), probe("a.jpg", jpeg));
+        // 帧头之前有 32KB 的 APP 段与段间填充字节
+        assertEquals(new Dimension(640, 427), probe("app.jpg", withAppSegment(jpeg, 32 * 1024, 3)));
+    }
+
+    @Test
+    void readsWebpHeaders() throws Exception {
+        assertEquals(new Dimension(640, 480), probe("lossy.webp", webp("VP8 ", vp8(640, 480))));
+        assertEquals(new Dimension(1000, 750), probe("lossless.webp", webp("VP8L", vp8l(1000, 750))));
+        assertEquals(new Dimension(4000, 3000), probe("extended.webp", webp("VP8X", vp8x(4000, 3000))));
+        assertNull(probe("unknown.webp", webp("ALPH", new byte[10])));
+    }
+
+    @Test
+    void returnsNullForTruncatedOrCorruptHeaders() throws Exception {
+        byte[] png = encode(10, 10, "png");
+        byte[] jpeg = encode(10, 10, "jpeg");
+
+        assertNull(probe("empty", new byte[0]));
+        assertNull(probe("text", "not an image at all, just some text".getBytes()));
+        assertNull(probe("short.png", Arrays.copyOf(png, 20)));
+        assertNull(probe("short.webp", Arrays.copyOf(webp("VP8 ", vp8(640, 480)), 24)));
+        assertNull(probe("soi.jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, 0, 0}));
+        // 段长度超出文件末尾
+        assertNull(probe("long-segment.jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, (byte) 0x7F, (byte) 0xFF, 0, 0}));
+        // 第一个段之后不是标记
+        byte[] corrupt = jpeg.clone();
+        int next = 4 + ((corrupt[4] & 0xFF) << 8 | corrupt[5] & 0xFF);
+        corrupt[next] = 0x12;
+        assertNull(probe("corrupt.jpg", corrupt));
+        // 帧头被截断
+        assertNull(probe("cut.jpg", Arrays.copyOf(jpeg, sofOffset(jpeg) + 6)));
+    }
+
+    private static Dimension probe(String name, byte[] data) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, data);
+        return ImageHeaderUtils.readDimensions(file);
+    }
+
+    private static byte[] encode(int width, int height, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height,
+                "gif".equals(format) ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    // 在 SOI 之后插入一个 APP15 段，随后是若干填充字节
+    private static byte[] withAppSegment(byte[] jpeg, int length, int fill) {
+        ByteBuffer buffer = ByteBuffer.allocate(jpeg.length + 2 + length + fill);
+        buffer.put(jpeg, 0, 2);
+        buffer.put((byte) 0xFF).put((byte) 0xEF).putShort((short) length);
+        buffer.put(new byte[length - 2]);
+        for (int i = 0; i < fill; i++) buffer.put((byte) 0xFF);
+        buffer.put(jpeg, 2, jpeg.length - 2);
+        return buffer.array();
+    }
+
+    private static int sofOffset(byte[] jpeg) {
+        for (int i = 2; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == 0xC0) return i;
+        }
+        throw new IllegalStateException("没有 SOF0");
+    }
+
+    private static byte[] webp(String fourcc, byte[] chunk) {
+        ByteBuffer buffer = ByteBuffer.allocate(20 + chunk.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(12 + chunk.length).put("WEBP".getBytes());
+        buffer.put(fourcc.getBytes()).putInt(chunk.length).put(chunk);
+        return buffer.array();
+    }
+
+    private static byte[] vp8(int width, int height) {
+        ByteBuffer buffer = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[3]).put((byte) 0x9D).put((byte) 0x01).put((byte) 0x2A);
+        return buffer.putShort((short) width).putShort((short) height).array();
+    }
+
+    private static byte[] vp8l(int width, int height) {
+        ByteBuffer buffer = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+        return buffer.put((byte) 0x2F).putInt((width - 1) | (height - 1) << 14).array();
+    }
+
+    private static byte[] vp8x(int width, int height) {
+        ByteBuffer buffer = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0);
+        buffer.put((byte) (width - 1)).put((byte) ((width - 1) >> 8)).put((byte) ((width - 1) >> 16));
+        buffer.put((byte) (height - 1)).put((byte) ((height - 1) >> 8)).put((byte) ((height - 1) >> 16));
+        return buffer.array();
+    }
+}
@@ -3,9 +3,9 @@ import type {TagDto} from './gallery'
 
 
 export const tagsApi = {
-  listTags: async (query?: string) => {
+  listTags: async (query?: string, limit?: number) => {
     const response = await apiClient.get<TagDto[]>('/tags', {
-      params: {query}
+      params: {query, limit}
     })
     return response.data
   }
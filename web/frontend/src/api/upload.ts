@@ -1,32 +1,146 @@
+import axios from 'axios'
 import apiClient from './client'
 
 export interface UploadTask {
   id: string
   filename: string
   size: number
+  uploadedBytes: number
   status: 'PENDING' | 'UPLOADING' | 'PROCESSING' | 'TAGGING' | 'SAVING' | 'COMPLETED' | 'FAILED'
   errorMessage?: string
+  // 各处理阶段耗时（毫秒）
+  stageTimings?: Record<string, number>
   createdAt: string
   updatedAt: string
 }
 
+export interface UploadSession {
+  id: string
+  size: number
+  receivedBytes: number
+  // 已接收的区间 [起点, 终点)
+  received: [number, number][]
+}
+
+export interface ImportStatus {
+  status: 'IDLE' | 'SCANNING' | 'WATCHING' | 'COMPLETED' | 'CANCELLED' | 'FAILED'
+  directory?: string
+  mode?: 'link' | 'move'
+  scannedFiles: number
+  scannedBytes: number
+  importedFiles: number
+  duplicateFiles: number
+  failedFiles: number
+  elapsedMillis: number
+  filesPerSecond: number
+  bytesPerSecond: number
+  errorMessage?: string
+}
+
+// 超过该大小的文件使用分块上传
+export const CHUNK_SIZE = 8 * 1024 * 1024
+const CHUNK_CONCURRENCY = 3
+const CHUNK_RETRIES = 5
+
+// 浏览器端计算 SHA-256 的文件大小上限，需要安全上下文（HTTPS 或 localhost）
+const HASH_MAX_SIZE = 64 * 1024 * 1024
+
+const sleep = (ms: number) => new Promise(resolve => setTimeout(resolve, ms))
+
+// 服务端处理队列已满（429）时等待后重试
+const retryWhenBusy = async <T>(request: () => Promise<T>): Promise<T> => {
+  for (let attempt = 0; ; attempt++) {
+    try {
+      return await request()
+    } catch (error) {
+      if (!axios.isAxiosError(error) || error.response?.status !== 429 || attempt >= 10) throw error
+      await sleep(Math.min(1000 * 2 ** attempt, 30000))
+    }
+  }
+}
+
+// 去除文件名中的路径
+// 有些浏览器在扫描文件夹时可能会把路径带入文件名，或者用户希望强制去除路径
+const baseName = (file: File) => file.name.split(/[/\\]/).pop() || file.name
+
+// 计算尚未接收的分块
+const missingChunks = (size: number, received: [number, number][]) => {
+  const chunks: [number, number][] = []
+  let position = 0
+  for (const [start, end] of [...received, [size, size] as [number, number]]) {
+    for (let offset = position; offset < start; offset += CHUNK_SIZE) {
+      chunks.push([offset, Math.min(offset + CHUNK_SIZE, start)])
+    }
+    position = Math.max(position, end)
+  }
+  return chunks
+}
+
 export const uploadApi = {
   uploadFile: async (file: File, enableTagging: boolean = true) => {
     const formData = new FormData()
-    // 处理文件名，确保不包含路径
-    // 有些浏览器在扫描文件夹时可能会把路径带入文件名，或者用户希望强制去除路径
-    const filename = file.name.split(/[/\\]/).pop() || file.name
-    formData.append('file', file, filename)
+    formData.append('file', file, baseName(file))
     formData.append('enableTagging', enableTagging.toString())
 
-    const response = await apiClient.post<UploadTask>('/upload', formData, {
+    const response = await retryWhenBusy(() => apiClient.post<UploadTask>('/upload', formData, {
       headers: {
         'Content-Type': 'multipart/form-data'
       }
+    }))
+    return response.data
+  },
+
+  // 分块上传：网络中断时查询已接收的区间，只补传缺失的分块
+  uploadFileChunked: async (file: File, enableTagging: boolean = true, hash?: string | null) => {
+    const {data: task} = await apiClient.post<UploadTask>('/upload/sessions', {
+      filename: baseName(file),
+      size: file.size,
+      enableTagging,
+      hash: hash ?? undefined
     })
+    // 重复的图片不需要上传内容
+    if (task.status !== 'UPLOADING') return task
+
+    let pending = missingChunks(file.size, [])
+    for (let attempt = 0; pending.length > 0; attempt++) {
+      const queue = [...pending]
+      const worker = async () => {
+        let chunk
+        while ((chunk = queue.shift())) {
+          const [start, end] = chunk
+          await apiClient.put(`/upload/sessions/${task.id}/chunks`, file.slice(start, end), {
+            params: {offset: start},
+            headers: {'Content-Type': 'application/octet-stream'}
+          })
+        }
+      }
+      try {
+        await Promise.all(Array.from({length: CHUNK_CONCURRENCY}, worker))
+      } catch (error) {
+        if (attempt >= CHUNK_RETRIES) throw error
+        await sleep(1000 * 2 ** attempt)
+      }
+      const {data: session} = await apiClient.get<UploadSession>(`/upload/sessions/${task.id}`)
+      pending = missingChunks(file.size, session.received)
+    }
+
+    const response = await retryWhenBusy(() => apiClient.post<UploadTask>(`/upload/sessions/${task.id}/commit`))
     return response.data
   },
 
+  // 计算文件的 SHA-256，环境不支持或文件过大时返回 null
+  hashFile: async (file: File) => {
+    if (!globalThis.crypto?.subtle || file.size > HASH_MAX_SIZE) return null
+    const digest = await crypto.subtle.digest('SHA-256', await file.arrayBuffer())
+    return Array.from(new Uint8Array(digest), b => b.toString(16).padStart(2, '0')).join('')
+  },
+
+  // 上传预检，返回已存在的哈希
+  checkHashes: async (hashes: string[]) => {
+    const response = await apiClient.post<{ existing: string[] }>('/upload/check', {hashes})
+    return response.data.existing
+  },
+
   listTasks: async () => {
     const response = await apiClient.get<UploadTask[]>('/upload/tasks')
     return response.data
@@ -38,5 +152,20 @@ export const uploadApi = {
 
   clearTasks: async () => {
     await apiClient.delete('/upload/tasks')
+  },
+
+  // 服务端批量导入
+  startImport: async () => {
+    const response = await apiClient.post<ImportStatus>('/upload/import')
+    return response.data
+  },
+
+  getImportStatus: async () => {
+    const response = await apiClient.get<ImportStatus>('/upload/import')
+    return response.data
+  },
+
+  stopImport: async () => {
+    await apiClient.delete('/upload/import')
   }
 }
@@ -2,7 +2,7 @@ import {defineStore} from 'pinia'
 import {ref} from 'vue'
 import PQueue from 'p-queue'
 import {useQuery} from '@tanstack/vue-query'
-import {uploadApi} from '../api/upload'
+import {CHUNK_SIZE, uploadApi} from '../api/upload'
 import {systemApi} from '../api/system'
 
 export const useQueueStore = defineStore('queue', () => {
@@ -39,7 +39,17 @@ export const useQueueStore = defineStore('queue', () => {
     await queue.add(async () => {
       updateStats() // 确保状态更新
       try {
-        await uploadApi.uploadFile(file, enableTagging)
+        // 先检查哈希，已存在的文件不再上传
+        const hash = await uploadApi.hashFile(file)
+        if (hash && (await uploadApi.checkHashes([hash])).length > 0) {
+          console.info(`Skipped existing file ${file.name}`)
+          return
+        }
+        if (file.size > CHUNK_SIZE) {
+          await uploadApi.uploadFileChunked(file, enableTagging, hash)
+        } else {
+          await uploadApi.uploadFile(file, enableTagging)
+        }
       } catch (error) {
         console.error(`Upload failed for ${file.name}:`, error)
         // 这里可以扩展添加客户端错误通知